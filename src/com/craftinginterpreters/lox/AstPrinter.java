@@ -30,6 +30,16 @@ class AstPrinter implements Expr.Visitor<String> {
         return parenthesize(expr.operator.lexeme, expr.right);
     }
 
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) { // and和or和二元的一样处理
+        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visitConditionalExpr(Expr.Conditional expr) { // 条件表达式的条件和两个分支
+        return parenthesize("?:", expr.condition, expr.thenBranch, expr.elseBranch);
+    }
+
     /**
      * 给expr加括号，会递归地处理expr
      * @param name 词素
@@ -0,0 +1,54 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量开启求值预算后的额外开销：同一棵树分别在不限制和限制（但不会超出）的情况下求值
+ */
+public class BudgetBenchmark {
+  private static final int WARMUP = 200;
+  private static final int ITERATIONS = 1000;
+
+  public static void main(String[] args) {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+    ErrorReporter reporter = new ErrorReporter(System.err);
+    List<Token> tokens = new Scanner(balanced(depth), reporter).scanTokens();
+    Expr expression = new Parser(tokens, reporter).parse();
+    new Interpreter(reporter).check(expression);
+
+    double plain = measure(expression, false);
+    double budgeted = measure(expression, true);
+    System.out.printf("nodes: %d%n", (6L << depth) - 2);
+    System.out.printf("no budget: %.1f us/op%n", plain / 1e3);
+    System.out.printf("budget:    %.1f us/op%n", budgeted / 1e3);
+    System.out.printf("overhead:  %.1f%%%n", (budgeted / plain - 1) * 100);
+  }
+
+  /**
+   * 平均每次求值的耗时（纳秒）
+   */
+  private static double measure(Expr expression, boolean withBudget) {
+    ErrorReporter reporter = new ErrorReporter(System.err);
+    for (int i = 0; i < WARMUP; i++) interpret(expression, reporter, withBudget);
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) interpret(expression, reporter, withBudget);
+    return (System.nanoTime() - start) / (double) ITERATIONS;
+  }
+
+  private static void interpret(Expr expression, ErrorReporter reporter, boolean withBudget) {
+    EvalBudget budget = withBudget
+            ? new EvalBudget(Long.MAX_VALUE - 1, 1 << 20, 1, TimeUnit.HOURS)
+            : null;
+    new Interpreter(reporter, budget).interpret(expression);
+  }
+
+  /**
+   * 生成一棵深度为depth的平衡二叉表达式，叶子为数字
+   */
+  private static String balanced(int depth) {
+    if (depth == 0) return "(1 + 2)";
+    String operator = depth % 2 == 0 ? " + " : " - ";
+    return "(" + balanced(depth - 1) + operator + balanced(depth - 1) + ")";
+  }
+}
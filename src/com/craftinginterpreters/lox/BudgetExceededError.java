@@ -0,0 +1,10 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * 求值超出预算或被取消时抛出的运行时异常
+ */
+class BudgetExceededError extends RuntimeError {
+  BudgetExceededError(Token token, String message) {
+    super(token, message);
+  }
+}
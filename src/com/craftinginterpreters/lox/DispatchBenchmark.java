@@ -0,0 +1,158 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * 比较两种分派方式：accept的访问者双重分派和按Expr.kind的switch分派。
+ * 两个求值器除了分派方式以外完全相同，都按Interpreter的方式计算数字表达式
+ */
+public class DispatchBenchmark {
+  private static final int WARMUP = 200;
+  private static final int ITERATIONS = 1000;
+
+  public static void main(String[] args) {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+    ErrorReporter reporter = new ErrorReporter(System.err);
+    List<Token> tokens = new Scanner(tree(depth), reporter).scanTokens();
+    Expr expression = new Parser(tokens, reporter).parse();
+
+    VisitorEvaluator visitor = new VisitorEvaluator();
+    SwitchEvaluator switcher = new SwitchEvaluator();
+    double visitorTime = 0;
+    double switchTime = 0;
+    for (int round = 0; round < 3; round++) { // 交替测量，减少JIT先后顺序的影响
+      visitorTime = measure(() -> expression.accept(visitor));
+      switchTime = measure(() -> switcher.evaluate(expression));
+    }
+    System.out.printf("visitor dispatch: %.1f us/op%n", visitorTime / 1e3);
+    System.out.printf("switch dispatch:  %.1f us/op%n", switchTime / 1e3);
+    System.out.printf("speedup:          %.2fx%n", visitorTime / switchTime);
+  }
+
+  private interface Workload {
+    Object run();
+  }
+
+  /**
+   * 平均每次求值的耗时（纳秒）
+   */
+  private static double measure(Workload workload) {
+    for (int i = 0; i < WARMUP; i++) workload.run();
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) workload.run();
+    return (System.nanoTime() - start) / (double) ITERATIONS;
+  }
+
+  /**
+   * 生成一棵深度为depth的平衡表达式，混合一元负号、括号和四则运算
+   */
+  private static String tree(int depth) {
+    if (depth == 0) return "(-" + (depth + 3) + ")";
+    String left = tree(depth - 1);
+    String right = tree(depth - 1);
+    switch (depth % 4) {
+      case 0: return "(" + left + " + " + right + ")";
+      case 1: return "(" + left + " - " + right + ")";
+      case 2: return "(" + left + " * " + right + ")";
+      default: return "-(" + left + " / " + right + ")";
+    }
+  }
+
+  private static double arithmetic(Token operator, Object left, Object right) {
+    double a = ((Number)left).doubleValue();
+    double b = ((Number)right).doubleValue();
+    switch (operator.type) {
+      case PLUS: return a + b;
+      case MINUS: return a - b;
+      case STAR: return a * b;
+      case SLASH: return a / b;
+    }
+
+    // Unreachable.
+    return 0;
+  }
+
+  private static boolean isTruthy(Object object) {
+    if (object == null) return false;
+    if (object instanceof Boolean) return (boolean)object;
+    return true;
+  }
+
+  /**
+   * 通过accept双重分派求值
+   */
+  private static class VisitorEvaluator implements Expr.Visitor<Object> {
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+      Object left = expr.left.accept(this);
+      Object right = expr.right.accept(this);
+      return arithmetic(expr.operator, left, right);
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+      return expr.expression.accept(this);
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+      return expr.value;
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+      return -((Number)expr.right.accept(this)).doubleValue();
+    }
+
+    @Override
+    public Object visitLogicalExpr(Expr.Logical expr) {
+      Object left = expr.left.accept(this);
+      if ((expr.operator.type == TokenType.OR) == isTruthy(left)) return left;
+      return expr.right.accept(this);
+    }
+
+    @Override
+    public Object visitConditionalExpr(Expr.Conditional expr) {
+      return isTruthy(expr.condition.accept(this))
+              ? expr.thenBranch.accept(this)
+              : expr.elseBranch.accept(this);
+    }
+  }
+
+  /**
+   * 通过switch节点类型编号求值
+   */
+  private static class SwitchEvaluator {
+    Object evaluate(Expr expr) {
+      switch (expr.kind) {
+        case Expr.BINARY: {
+          Expr.Binary binary = (Expr.Binary)expr;
+          Object left = evaluate(binary.left);
+          Object right = evaluate(binary.right);
+          return arithmetic(binary.operator, left, right);
+        }
+        case Expr.GROUPING:
+          return evaluate(((Expr.Grouping)expr).expression);
+        case Expr.LITERAL:
+          return ((Expr.Literal)expr).value;
+        case Expr.UNARY:
+          return -((Number)evaluate(((Expr.Unary)expr).right)).doubleValue();
+        case Expr.LOGICAL: {
+          Expr.Logical logical = (Expr.Logical)expr;
+          Object left = evaluate(logical.left);
+          if ((logical.operator.type == TokenType.OR) == isTruthy(left)) return left;
+          return evaluate(logical.right);
+        }
+        case Expr.CONDITIONAL: {
+          Expr.Conditional conditional = (Expr.Conditional)expr;
+          return isTruthy(evaluate(conditional.condition))
+                  ? evaluate(conditional.thenBranch)
+                  : evaluate(conditional.elseBranch);
+        }
+      }
+
+      // Unreachable.
+      return null;
+    }
+  }
+}
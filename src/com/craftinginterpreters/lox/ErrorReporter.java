@@ -0,0 +1,42 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+/**
+ * 错误报告类：保存一次执行的错误状态，每个请求各用一个实例，互不影响
+ */
+class ErrorReporter {
+  private final PrintStream err; // 错误信息输出位置
+  boolean hadError = false; // 编译时判断是否出现了错误
+  boolean hadRuntimeError = false; // 检测运行时异常
+  RuntimeError lastRuntimeError = null; // 最近一次报告的运行时异常
+
+  ErrorReporter(PrintStream err) {
+    this.err = err;
+  }
+
+  void error(int line, String message) {
+    report(line, "", message);
+  }
+
+  void error(Token token, String message) {
+    if (token.type == TokenType.EOF) {
+      report(token.line, " at end", message);
+    } else {
+      report(token.line, " at '" + token.lexeme + "'", message);
+    }
+  }
+
+  void runtimeError(RuntimeError error) {
+    err.println(error.getMessage() +
+            "\n[line " + error.token.line + "]");
+    hadRuntimeError = true;
+    lastRuntimeError = error;
+  }
+
+  private void report(int line, String where, String message) {
+    err.println(
+            "[line " + line + "] Error" + where + ": " + message);
+    hadError = true;
+  }
+}
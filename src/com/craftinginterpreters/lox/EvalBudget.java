@@ -0,0 +1,47 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次求值的资源预算：最多求值的节点数、"+"拼接出的字符串最大长度和截止时间，
+ * 另外可以在其他线程中调用cancel()取消求值
+ */
+class EvalBudget {
+  static final int CHECK_INTERVAL = 1024; // 每求值这么多个节点检查一次截止时间和取消标记
+
+  final long maxNodes;
+  final int maxStringLength;
+  private final long deadline; // System.nanoTime()下的截止时间
+  private volatile boolean cancelled = false;
+
+  /**
+   * @param maxNodes 最多求值的节点数
+   * @param maxStringLength 字符串最大长度
+   * @param timeout 超时时间，从创建预算时开始计算，小于等于0表示不限时
+   * @param unit 超时时间单位
+   */
+  EvalBudget(long maxNodes, int maxStringLength, long timeout, TimeUnit unit) {
+    this.maxNodes = maxNodes;
+    this.maxStringLength = maxStringLength;
+    this.deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : Long.MAX_VALUE;
+  }
+
+  /**
+   * 取消求值，可以在任意线程中调用，求值线程会在下一次检查时抛出异常
+   */
+  void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * 检查取消标记和截止时间
+   * @return 预算已用完时返回原因，否则返回null
+   */
+  String check() {
+    if (cancelled) return "Evaluation cancelled.";
+    if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+      return "Evaluation deadline exceeded.";
+    }
+    return null;
+  }
+}
@@ -7,6 +7,8 @@ import java.util.List;
  * expression     → literal
  *                | unary
  *                | binary
+ *                | logical
+ *                | conditional
  *                | grouping ;
  *
  * literal        → NUMBER | STRING | "true" | "false" | "nil" ;
@@ -15,16 +17,42 @@ import java.util.List;
  * binary         → expression operator expression ;
  * operator       → "==" | "!=" | "<" | "<=" | ">" | ">="
  *                | "+"  | "-"  | "*" | "/" ;
+ * logical        → expression ( "and" | "or" ) expression ;
+ * conditional    → expression "?" expression ":" expression ;
  */
-abstract class Expr {
+sealed abstract class Expr permits
+    Expr.Binary,
+    Expr.Grouping,
+    Expr.Literal,
+    Expr.Unary,
+    Expr.Logical,
+    Expr.Conditional {
+  static final int BINARY = 0; // 节点类型编号，解释器用它switch分派
+  static final int GROUPING = 1;
+  static final int LITERAL = 2;
+  static final int UNARY = 3;
+  static final int LOGICAL = 4;
+  static final int CONDITIONAL = 5;
+
+  final int kind; // 节点类型编号
+
+  private Expr(int kind) {
+    this.kind = kind;
+  }
+
+  LoxType type = LoxType.UNKNOWN; // TypeChecker推断出的结果类型
+
   interface Visitor<R> { // 访问者接口，想要访问数据接口就需要继承这个类并实现它的方法
     R visitBinaryExpr(Binary expr);
     R visitGroupingExpr(Grouping expr);
     R visitLiteralExpr(Literal expr);
     R visitUnaryExpr(Unary expr);
+    R visitLogicalExpr(Logical expr);
+    R visitConditionalExpr(Conditional expr);
   }
-  static class Binary extends Expr { // 二元的expression
+  static final class Binary extends Expr { // 二元的expression
     Binary(Expr left, Token operator, Expr right) {
+      super(BINARY);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -35,12 +63,27 @@ abstract class Expr {
       return visitor.visitBinaryExpr(this);
     }
 
+    @Override
+    int childCount() {
+      return 2;
+    }
+
+    @Override
+    Expr child(int index) {
+      switch (index) {
+        case 0: return left;
+        case 1: return right;
+      }
+      throw new IndexOutOfBoundsException(index);
+    }
+
     final Expr left;
     final Token operator;
     final Expr right;
   }
-  static class Grouping extends Expr { // 括号
+  static final class Grouping extends Expr { // 括号
     Grouping(Expr expression) {
+      super(GROUPING);
       this.expression = expression;
     }
 
@@ -49,10 +92,24 @@ abstract class Expr {
       return visitor.visitGroupingExpr(this);
     }
 
+    @Override
+    int childCount() {
+      return 1;
+    }
+
+    @Override
+    Expr child(int index) {
+      switch (index) {
+        case 0: return expression;
+      }
+      throw new IndexOutOfBoundsException(index);
+    }
+
     final Expr expression;
   }
-  static class Literal extends Expr { // 字面量
+  static final class Literal extends Expr { // 字面量
     Literal(Object value) {
+      super(LITERAL);
       this.value = value;
     }
 
@@ -61,10 +118,21 @@ abstract class Expr {
       return visitor.visitLiteralExpr(this);
     }
 
+    @Override
+    int childCount() {
+      return 0;
+    }
+
+    @Override
+    Expr child(int index) {
+      throw new IndexOutOfBoundsException(index);
+    }
+
     final Object value;
   }
-  static class Unary extends Expr { // 一元
+  static final class Unary extends Expr { // 一元
     Unary(Token operator, Expr right) {
+      super(UNARY);
       this.operator = operator;
       this.right = right;
     }
@@ -74,9 +142,87 @@ abstract class Expr {
       return visitor.visitUnaryExpr(this);
     }
 
+    @Override
+    int childCount() {
+      return 1;
+    }
+
+    @Override
+    Expr child(int index) {
+      switch (index) {
+        case 0: return right;
+      }
+      throw new IndexOutOfBoundsException(index);
+    }
+
     final Token operator;
     final Expr right;
   }
+  static final class Logical extends Expr { // and和or，右操作数可能不求值
+    Logical(Expr left, Token operator, Expr right) {
+      super(LOGICAL);
+      this.left = left;
+      this.operator = operator;
+      this.right = right;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitLogicalExpr(this);
+    }
+
+    @Override
+    int childCount() {
+      return 2;
+    }
+
+    @Override
+    Expr child(int index) {
+      switch (index) {
+        case 0: return left;
+        case 1: return right;
+      }
+      throw new IndexOutOfBoundsException(index);
+    }
+
+    final Expr left;
+    final Token operator;
+    final Expr right;
+  }
+  static final class Conditional extends Expr { // 条件表达式?:，只求值选中的分支
+    Conditional(Expr condition, Expr thenBranch, Expr elseBranch) {
+      super(CONDITIONAL);
+      this.condition = condition;
+      this.thenBranch = thenBranch;
+      this.elseBranch = elseBranch;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitConditionalExpr(this);
+    }
+
+    @Override
+    int childCount() {
+      return 3;
+    }
+
+    @Override
+    Expr child(int index) {
+      switch (index) {
+        case 0: return condition;
+        case 1: return thenBranch;
+        case 2: return elseBranch;
+      }
+      throw new IndexOutOfBoundsException(index);
+    }
+
+    final Expr condition;
+    final Expr thenBranch;
+    final Expr elseBranch;
+  }
 
   abstract <R> R accept(Visitor<R> visitor); // 接受visitor的抽象方法，子类中实现这个方法时调用visitor的方法对自己进行操作
+  abstract int childCount(); // 子表达式的个数
+  abstract Expr child(int index); // 按求值顺序的第index个子表达式，遍历语法树时不用再按kind逐个列举字段
 }
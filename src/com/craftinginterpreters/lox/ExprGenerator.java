@@ -0,0 +1,187 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 随机Lox表达式生成器：同样的种子和参数总是生成同样的表达式，用来做可重复的性能测试
+ * 表达式按类型生成（数字、字符串、布尔），只有按errorRate注入的地方才会出现运行时类型错误
+ */
+class ExprGenerator {
+  private static final String[] ARITHMETIC = {"+", "-", "*", "/"};
+  private static final String[] COMPARISON = {"<", "<=", ">", ">=", "==", "!="};
+
+  /**
+   * 生成参数
+   */
+  static class Options {
+    int maxDepth = 6; // 最大嵌套深度
+    int maxFanOut = 3; // 一个二元运算链上最多的操作数个数，如a + b + c为3
+    double numberRatio = 0.8; // 顶层表达式为数字（其余为字符串或布尔）的比例
+    double booleanRatio = 0.1; // 顶层表达式为布尔的比例
+    double errorRate = 0.0; // 含有一处类型错误的表达式比例
+    double[] arithmeticWeights = {4, 3, 2, 1}; // + - * / 的权重
+    double leafProbability = 0.3; // 没到最大深度时提前生成叶子的概率
+  }
+
+  private final Random random;
+  private final Options options;
+  private boolean injectError; // 当前表达式还需要注入一处错误
+
+  ExprGenerator(long seed, Options options) {
+    this.random = new Random(seed);
+    this.options = options;
+  }
+
+  /**
+   * 生成表达式直到总字符数达到totalSize
+   * @param totalSize 语料总字符数
+   * @return 表达式列表
+   */
+  List<String> corpus(long totalSize) {
+    List<String> sources = new ArrayList<>();
+    long size = 0;
+    while (size < totalSize) {
+      String source = next();
+      sources.add(source);
+      size += source.length();
+    }
+    return sources;
+  }
+
+  /**
+   * 生成一个表达式
+   */
+  String next() {
+    injectError = random.nextDouble() < options.errorRate;
+    double kind = random.nextDouble();
+    StringBuilder builder = new StringBuilder();
+    if (kind < options.numberRatio) {
+      number(builder, 0);
+    } else if (kind < options.numberRatio + options.booleanRatio) {
+      bool(builder, 0);
+    } else {
+      string(builder, 0);
+    }
+    return builder.toString();
+  }
+
+  private void number(StringBuilder builder, int depth) {
+    if (isLeaf(depth)) {
+      if (injectError) {
+        error(builder);
+      } else {
+        numberLiteral(builder);
+      }
+      return;
+    }
+    switch (random.nextInt(8)) {
+      case 0:
+        builder.append('-');
+        number(builder, depth + 1);
+        return;
+      case 1:
+        builder.append('(');
+        number(builder, depth + 1);
+        builder.append(')');
+        return;
+      default:
+        int operands = 2 + random.nextInt(Math.max(1, options.maxFanOut - 1));
+        builder.append('(');
+        number(builder, depth + 1);
+        for (int i = 1; i < operands; i++) {
+          builder.append(' ').append(arithmeticOperator()).append(' ');
+          number(builder, depth + 1);
+        }
+        builder.append(')');
+    }
+  }
+
+  private void string(StringBuilder builder, int depth) {
+    if (isLeaf(depth)) {
+      if (injectError) {
+        error(builder);
+      } else {
+        stringLiteral(builder);
+      }
+      return;
+    }
+    int operands = 2 + random.nextInt(Math.max(1, options.maxFanOut - 1));
+    builder.append('(');
+    string(builder, depth + 1);
+    for (int i = 1; i < operands; i++) {
+      builder.append(" + ");
+      string(builder, depth + 1);
+    }
+    builder.append(')');
+  }
+
+  private void bool(StringBuilder builder, int depth) {
+    if (isLeaf(depth)) {
+      if (injectError) { // 比较的结果是布尔值，左操作数求值时出错
+        builder.append('(');
+        error(builder);
+        builder.append(" < 1)");
+      } else {
+        builder.append(random.nextBoolean() ? "true" : "false");
+      }
+      return;
+    }
+    switch (random.nextInt(4)) {
+      case 0:
+        builder.append('!');
+        bool(builder, depth + 1);
+        return;
+      case 1:
+        builder.append('(');
+        string(builder, depth + 1);
+        builder.append(random.nextBoolean() ? " == " : " != ");
+        string(builder, depth + 1);
+        builder.append(')');
+        return;
+      default:
+        builder.append('(');
+        number(builder, depth + 1);
+        builder.append(' ').append(COMPARISON[random.nextInt(COMPARISON.length)]).append(' ');
+        number(builder, depth + 1);
+        builder.append(')');
+    }
+  }
+
+  /**
+   * 注入一处一定会出错的叶子：对字符串取负，不管出现在什么位置都会在求值时报错
+   */
+  private void error(StringBuilder builder) {
+    injectError = false;
+    builder.append('-');
+    stringLiteral(builder);
+  }
+
+  private boolean isLeaf(int depth) {
+    return depth >= options.maxDepth || random.nextDouble() < options.leafProbability;
+  }
+
+  private void numberLiteral(StringBuilder builder) {
+    builder.append(1 + random.nextInt(1000));
+    if (random.nextInt(4) == 0) builder.append('.').append(random.nextInt(100));
+  }
+
+  private void stringLiteral(StringBuilder builder) {
+    builder.append('"');
+    int length = random.nextInt(12);
+    for (int i = 0; i < length; i++) builder.append((char) ('a' + random.nextInt(26)));
+    builder.append('"');
+  }
+
+  private String arithmeticOperator() {
+    double total = 0;
+    for (double weight : options.arithmeticWeights) total += weight;
+    double pick = random.nextDouble() * total;
+    for (int i = 0; i < ARITHMETIC.length; i++) {
+      pick -= options.arithmeticWeights[i];
+      if (pick < 0) return ARITHMETIC[i];
+    }
+    return ARITHMETIC[ARITHMETIC.length - 1];
+  }
+}
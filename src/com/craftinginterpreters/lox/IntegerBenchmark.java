@@ -0,0 +1,58 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 比较整数和浮点数两种表示下的吞吐量：同一批计数、下标风格的小表达式，
+ * 一份用整数字面量（Long），一份在每个字面量后面加上".0"（Double，相当于原来的表示）。
+ * 每个表达式都求值并转换成结果字符串，和服务里逐个请求处理的方式一样
+ */
+public class IntegerBenchmark {
+  private static final int EXPRESSIONS = 10_000;
+  private static final int WARMUP = 50;
+  private static final int ITERATIONS = 200;
+
+  public static void main(String[] args) {
+    double integerTime = measure(parseAll(""));
+    double doubleTime = measure(parseAll(".0"));
+    System.out.printf("integer literals: %.0f expr/s%n", EXPRESSIONS / integerTime * 1e9);
+    System.out.printf("double literals:  %.0f expr/s%n", EXPRESSIONS / doubleTime * 1e9);
+    System.out.printf("speedup:          %.2fx%n", doubleTime / integerTime);
+  }
+
+  /**
+   * 平均每轮（求值并输出所有表达式）的耗时（纳秒）
+   */
+  private static double measure(List<Expr> expressions) {
+    Interpreter interpreter = new Interpreter(new ErrorReporter(System.err));
+    for (int i = 0; i < WARMUP; i++) interpretAll(interpreter, expressions);
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) interpretAll(interpreter, expressions);
+    return (System.nanoTime() - start) / (double) ITERATIONS;
+  }
+
+  private static int interpretAll(Interpreter interpreter, List<Expr> expressions) {
+    int length = 0;
+    for (Expr expression : expressions) length += interpreter.interpret(expression).length();
+    return length;
+  }
+
+  /**
+   * 生成、解析并检查所有表达式，形如"(i * 8 + j) - k * 2"
+   * @param suffix 每个数字字面量的后缀
+   */
+  private static List<Expr> parseAll(String suffix) {
+    ErrorReporter reporter = new ErrorReporter(System.err);
+    List<Expr> expressions = new ArrayList<>();
+    for (int i = 0; i < EXPRESSIONS; i++) {
+      String source = "(" + i + suffix + " * 8" + suffix + " + " + (i % 8) + suffix + ") - " +
+              (i / 3) + suffix + " * 2" + suffix;
+      List<Token> tokens = new Scanner(source, reporter).scanTokens();
+      Expr expression = new Parser(tokens, reporter).parse();
+      new Interpreter(reporter).check(expression); // 每棵树检查一次，推断出的类型之后每轮求值都能用
+      expressions.add(expression);
+    }
+    return expressions;
+  }
+}
@@ -4,18 +4,77 @@ package com.craftinginterpreters.lox;
  * 根据语法树计算出表达式的值
  */
 class Interpreter implements Expr.Visitor<Object> {
+    // 整数用Long表示的上限：绝对值不超过2^53的整数Double也能精确表示，两种表示下的运算结果完全一致
+    static final long MAX_EXACT = 1L << 53;
 
-    void interpret(Expr expression) { // 入口方法
+    private final ErrorReporter reporter; // 错误报告
+    private final EvalBudget budget; // 求值预算，为null表示不限制
+    private final int maxStringLength;
+    private final StringPool strings; // 较短的拼接结果放进这个池，为null表示不合并
+    private long steps = 0; // 已经求值的节点数
+    private long nextCheck; // steps达到这个值时检查一次预算，热路径上只需要一次比较
+    private long visited = 0; // check时TypeChecker访问的节点数，不计入steps
+    private Expr root; // 正在求值的语法树，用于给预算异常定位行号
+
+    Interpreter(ErrorReporter reporter) {
+        this(reporter, null);
+    }
+
+    Interpreter(ErrorReporter reporter, EvalBudget budget) {
+        this(reporter, budget, null);
+    }
+
+    Interpreter(ErrorReporter reporter, EvalBudget budget, StringPool strings) {
+        this.reporter = reporter;
+        this.budget = budget;
+        this.strings = strings;
+        this.maxStringLength = budget == null ? Integer.MAX_VALUE : budget.maxStringLength;
+        this.nextCheck = budget == null ? Long.MAX_VALUE : nextCheckAfter(0);
+    }
+
+    /**
+     * 求值前的静态类型检查，每棵树只需要做一次，推断出的类型记录在树上，之后每次求值都能用
+     * 一定会出现的类型错误不用等到求值；检查时也受截止时间和取消的限制，但访问的节点不计入节点数预算
+     * @param expression 语法树
+     * @return 报告了错误（一定会出现的类型错误或超出预算）时返回false
+     */
+    boolean check(Expr expression) {
+        root = expression;
+        try {
+            RuntimeError certain = new TypeChecker(this).check(expression);
+            if (certain == null) return true;
+            reporter.runtimeError(certain);
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+        return false;
+    }
+
+    /**
+     * 入口方法，没有经过check的树所有运算都在运行时检查操作数类型
+     * @param expression 语法树
+     * @return 结果字符串，出现运行时异常时返回null
+     */
+    String interpret(Expr expression) {
+        root = expression;
         try {
             Object value = evaluate(expression);
-            System.out.println(stringify(value));
+            return stringify(value);
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            reporter.runtimeError(error);
+            return null;
         }
     }
-    private String stringify(Object object) { // 输出结果
+    String stringify(Object object) { // 输出结果
         if (object == null) return "nil";
 
+        if (object instanceof Long) {
+            long value = (long)object;
+            // Double.toString在这个范围内不用科学计数法，去掉".0"后和整数的写法一样
+            if (value > -10_000_000 && value < 10_000_000) return Long.toString(value);
+            return stringify((double)value);
+        }
+
         if (object instanceof Double) {
             String text = object.toString();
             if (text.endsWith(".0")) {
@@ -27,27 +86,92 @@ class Interpreter implements Expr.Visitor<Object> {
         return object.toString();
     }
 
-    private boolean isTruthy(Object object) { // 不是Boolean只要不为空，都表示true
+    boolean isTruthy(Object object) { // 不是Boolean只要不为空，都表示true
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean)object;
         return true;
     }
     private boolean isEqual(Object a, Object b) {
-        if (a == null && b == null) return true;
+        if (a == b) return true; // 同一个对象，包括都为nil和池中的同一个字符串
         if (a == null) return false;
+        if (a instanceof Long && b instanceof Double || a instanceof Double && b instanceof Long) {
+            return Double.valueOf(toDouble(a)).equals(toDouble(b)); // 和原来一样按Double.equals比较
+        }
 
         return a.equals(b);
     }
-    private Object evaluate(Expr expr) {
+    Object evaluate(Expr expr) { // ParallelInterpreter用它顺序求值较小的子树
+        if (++steps >= nextCheck) checkBudget(expr);
         return expr.accept(this);
     }
+
+    /**
+     * TypeChecker每访问一个节点调用一次，只检查截止时间和取消标记，节点数预算只计算求值的节点
+     * @param expr 正在访问的节点
+     */
+    void visited(Expr expr) {
+        if (budget == null || ++visited % EvalBudget.CHECK_INTERVAL != 0) return;
+        String reason = budget.check();
+        if (reason != null) throw new BudgetExceededError(locate(expr), reason);
+    }
+
+    /**
+     * 检查预算，超出时抛出BudgetExceededError
+     * @param expr 当前正在求值的节点
+     */
+    private void checkBudget(Expr expr) {
+        String reason = steps > budget.maxNodes
+                ? "Evaluation exceeded " + budget.maxNodes + " nodes."
+                : budget.check();
+        if (reason != null) throw new BudgetExceededError(locate(expr), reason);
+        nextCheck = nextCheckAfter(steps);
+    }
+
+    private long nextCheckAfter(long steps) {
+        long maxNodes = budget.maxNodes == Long.MAX_VALUE ? Long.MAX_VALUE - 1 : budget.maxNodes;
+        return Math.min(steps + EvalBudget.CHECK_INTERVAL, maxNodes + 1);
+    }
+
+    /**
+     * 找一个能表示expr所在位置的token，字面量没有token时使用整棵树的
+     */
+    private Token locate(Expr expr) {
+        Token token = tokenOf(expr);
+        if (token == null) token = tokenOf(root);
+        if (token == null) token = new Token(TokenType.EOF, "", null, 1);
+        return token;
+    }
+
+    private static Token tokenOf(Expr expr) {
+        if (expr instanceof Expr.Binary) return ((Expr.Binary)expr).operator;
+        if (expr instanceof Expr.Unary) return ((Expr.Unary)expr).operator;
+        if (expr instanceof Expr.Logical) return ((Expr.Logical)expr).operator;
+        if (expr instanceof Expr.Conditional) return tokenOf(((Expr.Conditional)expr).condition);
+        if (expr instanceof Expr.Grouping) return tokenOf(((Expr.Grouping)expr).expression);
+        return null;
+    }
+    private static boolean isNumber(Object object) {
+        return object instanceof Long || object instanceof Double;
+    }
+    private static double toDouble(Object number) {
+        return ((Number)number).doubleValue();
+    }
+
+    /**
+     * 整数运算的结果超出MAX_EXACT时提升为Double，和一直用Double计算的结果相同
+     */
+    private static Object exact(long value) {
+        if (value >= -MAX_EXACT && value <= MAX_EXACT) return Long.valueOf(value);
+        return (double)value;
+    }
+
     private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) return;
+        if (isNumber(operand)) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
     private void checkNumberOperands(Token operator,
                                      Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) return;
+        if (isNumber(left) && isNumber(right)) return;
 
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
@@ -60,15 +184,47 @@ class Interpreter implements Expr.Visitor<Object> {
     public Object visitGroupingExpr(Expr.Grouping expr) {
         return evaluate(expr.expression);
     }
+    @Override
+    public Object visitLogicalExpr(Expr.Logical expr) {
+        Object left = evaluate(expr.left);
+        if (shortCircuits(expr, left)) return left; // 不求值右操作数
+        return evaluate(expr.right);
+    }
+
+    /**
+     * 左操作数已经能决定and或or的结果时返回true，这时结果就是左操作数
+     */
+    boolean shortCircuits(Expr.Logical expr, Object left) {
+        return expr.operator.type == TokenType.OR ? isTruthy(left) : !isTruthy(left);
+    }
+
+    @Override
+    public Object visitConditionalExpr(Expr.Conditional expr) {
+        return isTruthy(evaluate(expr.condition)) // 只求值选中的分支
+                ? evaluate(expr.thenBranch)
+                : evaluate(expr.elseBranch);
+    }
+
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object right = evaluate(expr.right);
+        return unary(expr, right);
+    }
 
-        switch (expr.operator.type) {
+    /**
+     * 对已经求值的操作数执行一元运算，TypeChecker已经确定操作数类型时不再检查
+     */
+    Object unary(Expr.Unary expr, Object right) {
+        Token operator = expr.operator;
+        switch (operator.type) {
             case BANG:
                 return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
+                if (expr.type == LoxType.UNKNOWN) checkNumberOperand(operator, right);
+                if (right instanceof Long) {
+                    long value = (long)right;
+                    return value == 0 ? (Object)(-0.0) : exact(-value); // -0只有Double能表示
+                }
                 return -(double)right;
         }
 
@@ -82,39 +238,62 @@ class Interpreter implements Expr.Visitor<Object> {
     public Object visitBinaryExpr(Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        return binary(expr, left, right);
+    }
+
+    /**
+     * 对已经求值的操作数执行二元运算，TypeChecker已经确定操作数类型时不再检查
+     */
+    Object binary(Expr.Binary expr, Object left, Object right) {
+        Token operator = expr.operator;
+        boolean checked = expr.type != LoxType.UNKNOWN;
+        boolean integers = left instanceof Long && right instanceof Long;
 
-        switch (expr.operator.type) {
+        switch (operator.type) {
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left > (double)right;
+                if (!checked) checkNumberOperands(operator, left, right);
+                if (integers) return (long)left > (long)right;
+                return toDouble(left) > toDouble(right);
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left >= (double)right;
+                if (!checked) checkNumberOperands(operator, left, right);
+                if (integers) return (long)left >= (long)right;
+                return toDouble(left) >= toDouble(right);
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left < (double)right;
+                if (!checked) checkNumberOperands(operator, left, right);
+                if (integers) return (long)left < (long)right;
+                return toDouble(left) < toDouble(right);
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left <= (double)right;
+                if (!checked) checkNumberOperands(operator, left, right);
+                if (integers) return (long)left <= (long)right;
+                return toDouble(left) <= toDouble(right);
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left - (double)right;
+                if (!checked) checkNumberOperands(operator, left, right);
+                if (integers) return exact(Math.subtractExact((long)left, (long)right));
+                return toDouble(left) - toDouble(right);
             case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double)left + (double)right;
+                if (integers) return exact(Math.addExact((long)left, (long)right));
+                if (expr.type == LoxType.NUMBER || !checked && isNumber(left) && isNumber(right)) {
+                    return toDouble(left) + toDouble(right);
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return (String)left + (String)right;
+                if (checked || left instanceof String && right instanceof String) {
+                    if ((long)((String)left).length() + ((String)right).length() > maxStringLength) {
+                        throw new BudgetExceededError(operator,
+                                "String length exceeds " + maxStringLength + ".");
+                    }
+                    String result = (String)left + (String)right;
+                    return strings != null ? strings.intern(result) : result;
                 }
-                throw new RuntimeError(expr.operator,
+                throw new RuntimeError(operator,
                         "Operands must be two numbers or two strings.");
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left / (double)right;
+                if (!checked) checkNumberOperands(operator, left, right);
+                if (integers) return divide((long)left, (long)right);
+                return toDouble(left) / toDouble(right);
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left * (double)right;
+                if (!checked) checkNumberOperands(operator, left, right);
+                if (integers) return multiply((long)left, (long)right);
+                return toDouble(left) * toDouble(right);
             case BANG_EQUAL: return !isEqual(left, right);
             case EQUAL_EQUAL: return isEqual(left, right);
         }
@@ -123,4 +302,26 @@ class Interpreter implements Expr.Visitor<Object> {
         return null;
     }
 
+    /**
+     * 整数乘法，溢出时改用Double；结果为0且有负数操作数时是-0，只能用Double表示
+     */
+    private static Object multiply(long left, long right) {
+        try {
+            long product = Math.multiplyExact(left, right);
+            if (product == 0 && (left < 0 || right < 0)) return -0.0;
+            return exact(product);
+        } catch (ArithmeticException overflow) {
+            return (double)left * (double)right;
+        }
+    }
+
+    /**
+     * 整数除法，只有能整除时结果才是整数，除以0和不能整除时改用Double
+     */
+    private static Object divide(long left, long right) {
+        if (right == 0 || left % right != 0) return (double)left / (double)right;
+        if (left == 0 && right < 0) return -0.0;
+        return exact(left / right);
+    }
+
 }
\ No newline at end of file
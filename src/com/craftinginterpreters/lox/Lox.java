@@ -1,40 +1,76 @@
 package com.craftinginterpreters.lox;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 
 public class Lox {
-  private static final Interpreter interpreter = new Interpreter();
-  static boolean hadError = false; // 编译时判断是否出现了错误
-  static boolean hadRuntimeError = false; // 检测运行时异常
+  private static final ErrorReporter reporter = new ErrorReporter(System.err); // 命令行模式共用的错误状态
+  private static boolean parallel = false; // --parallel：用ParallelInterpreter求值
+  private static boolean showStats = false; // --stats：执行后输出每个阶段的统计
+  private static boolean offHeap = false; // --off-heap：脚本文件映射到堆外扫描，token也存在堆外
+  private static boolean stream = false; // --stream：从标准输入逐行流式执行，不打印提示符
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64); 
-    } else if (args.length == 1) {
-      runFile(args[0]); // 从文件读取，参数为文件路径
+    List<String> files = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.equals("--parallel")) {
+        parallel = true;
+      } else if (arg.equals("--stats")) {
+        showStats = true;
+      } else if (arg.equals("--off-heap")) {
+        offHeap = true;
+      } else if (arg.equals("--stream")) {
+        stream = true;
+      } else if (arg.startsWith("--")) {
+        usage();
+      } else {
+        files.add(arg);
+      }
+    }
+
+    // 流式模式只从标准输入读取，各阶段都是按行的小表达式，不支持并行求值、统计和堆外扫描
+    if (files.size() > 1 || stream && (!files.isEmpty() || parallel || showStats || offHeap)) {
+      usage();
+    } else if (stream) {
+      runStream();
+    } else if (files.size() == 1) {
+      runFile(files.get(0)); // 从文件读取，参数为文件路径
     } else {
       runPrompt();
     }
   }
 
+  private static void usage() {
+    System.out.println("Usage: jlox [--parallel] [--stats] [--off-heap] [script]");
+    System.out.println("       jlox --stream");
+    System.exit(64);
+  }
+
   /**
    * 从文件中读取代码
    * @param path 文件路径
    * @throws IOException
    */
   private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+    if (offHeap) {
+      runOffHeap(path);
+    } else {
+      byte[] bytes = Files.readAllBytes(Paths.get(path));
+      run(new String(bytes, Charset.defaultCharset()));
+    }
     // Indicate an error in the exit code.
-    if (hadError) System.exit(65); // 若出现错误则退出程序
-    if (hadRuntimeError) System.exit(70);
+    if (reporter.hadError) System.exit(65); // 若出现错误则退出程序
+    if (reporter.hadRuntimeError) System.exit(70);
   }
 
   /**
@@ -50,50 +86,114 @@ public class Lox {
       String line = reader.readLine(); // control+D读取为null，退出
       if (line == null) break;
       run(line);
-      hadError = false; // 命令行的方式出现编译错误不用退出循环，所以重置hadError字段
+      reporter.hadError = false; // 命令行的方式出现编译错误不用退出循环，所以重置hadError字段
     }
   }
 
   /**
-   * 执行源代码
+   * 非交互地执行标准输入中的每一行，读取、扫描、解析、求值和输出在不同线程中流水线进行
+   */
+  private static void runStream() throws IOException {
+    PrintStream out = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(System.in), 1 << 16);
+    try {
+      new StreamPipeline(reader, out, System.err).run();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * 执行源代码并打印结果
    * @param source 程序源代码
    */
   private static void run(String source) {
-    Scanner scanner=new Scanner(source);
-    List<Token> tokens = scanner.scanTokens(); // 从源代码中解析出所有token
+    PhaseStats stats = showStats ? new PhaseStats() : null;
+    if (stats != null) stats.begin();
+    List<Token> tokens = new Scanner(source, reporter).scanTokens();
+    if (stats != null) stats.end(PhaseStats.SCAN);
+    execute(tokens, stats);
+  }
 
-//    // For now, just print the tokens.
-//    for (Token token : tokens) {
-//      System.out.println(token);
-//    }
-    Parser parser = new Parser(tokens);
-    Expr expression = parser.parse();
+  /**
+   * 执行很大的脚本文件：源代码映射到堆外直接扫描，token也存在堆外，
+   * 堆上只有语法树和临时的Token对象，文件按UTF-8解码
+   * @param path 文件路径
+   */
+  private static void runOffHeap(String path) throws IOException {
+    try (OffHeapArena arena = new OffHeapArena()) {
+      PhaseStats stats = showStats ? new PhaseStats() : null;
+      if (stats != null) stats.begin();
+      OffHeapSource source = arena.mapSource(Paths.get(path));
+      List<Token> tokens = new OffHeapScanner(arena, source, reporter).scanTokens();
+      if (stats != null) stats.end(PhaseStats.SCAN);
+      execute(tokens, stats);
+    }
+  }
 
-    // Stop if there was a syntax error.
-    if (hadError) return;
+  /**
+   * 解析并执行扫描出的token，打印结果
+   * @param tokens token列表
+   * @param stats 统计，为null表示不统计
+   */
+  private static void execute(List<Token> tokens, PhaseStats stats) {
+    Expr expression = new Parser(tokens, reporter).parse();
+    if (stats != null) stats.end(PhaseStats.PARSE);
 
-    interpreter.interpret(expression);
-  }
+    if (!reporter.hadError) { // Stop if there was a syntax error.
+      Interpreter interpreter = new Interpreter(reporter);
+      String result = !interpreter.check(expression) ? null
+              : parallel ? new ParallelInterpreter(reporter).interpret(expression)
+              : interpreter.interpret(expression);
+      if (stats != null) stats.end(PhaseStats.INTERPRET);
+      if (result != null) System.out.println(result);
+    }
 
-  static void error(int line, String message) {
-    report(line, "", message);
+    if (stats != null) {
+      stats.tokens = tokens.size();
+      stats.nodes = PhaseStats.countNodes(expression);
+      stats.print(System.err);
+    }
   }
 
-  private static void report(int line, String where, String message) {
-    System.err.println(
-            "[line " + line + "] Error" + where + ": " + message);
-    hadError = true;
-  }
-  static void error(Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
-    } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
-    }
+  /**
+   * 在预算内执行源代码，字符串字面量和较短的拼接结果放进字符串池
+   * 错误状态都记录在传入的reporter中，可以在多个线程中同时调用
+   * @param source 程序源代码
+   * @param reporter 本次执行的错误报告
+   * @param budget 求值预算，为null表示不限制
+   * @param strings 字符串池，为null表示不合并
+   * @return 结果字符串，出现错误时返回null
+   */
+  static String run(String source, ErrorReporter reporter, EvalBudget budget, StringPool strings) {
+    Expr expression = parse(source, reporter, strings);
+
+    // Stop if there was a syntax error.
+    if (expression == null) return null;
+
+    Interpreter interpreter = new Interpreter(reporter, budget, strings);
+    if (!interpreter.check(expression)) return null;
+    return interpreter.interpret(expression);
   }
-  static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() +
-            "\n[line " + error.token.line + "]");
-    hadRuntimeError = true;
+
+  /**
+   * 扫描并解析源代码，字符串字面量放进字符串池
+   * @param source 程序源代码
+   * @param reporter 本次执行的错误报告
+   * @param strings 字符串池，为null表示不合并
+   * @return 语法树，出现语法错误时返回null
+   */
+  static Expr parse(String source, ErrorReporter reporter, StringPool strings) {
+    Scanner scanner = new Scanner(source, reporter, strings);
+    List<Token> tokens = scanner.scanTokens(); // 从源代码中解析出所有token
+
+//    // For now, just print the tokens.
+//    for (Token token : tokens) {
+//      System.out.println(token);
+//    }
+    Parser parser = new Parser(tokens, reporter);
+    Expr expression = parser.parse();
+    return reporter.hadError ? null : expression;
   }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * 求值服务的命令行客户端：发送一个脚本文件，或者把标准输入的每一行作为一个请求
+ */
+public class LoxClient {
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.out.println("Usage: jlox-client <port | socket path> [script]");
+      System.exit(64);
+    }
+
+    try (SocketChannel channel = LoxProtocol.connect(args[0])) {
+      DataInputStream in = new DataInputStream(
+              new BufferedInputStream(Channels.newInputStream(channel)));
+      DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+      if (args.length == 2) {
+        byte[] bytes = Files.readAllBytes(Paths.get(args[1]));
+        int status = send(in, out, new String(bytes, Charset.defaultCharset()));
+        if (status != LoxProtocol.OK) System.exit(status); // 和Lox.runFile一样用退出码表示错误
+        return;
+      }
+
+      BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+      for (;;) {
+        String line = reader.readLine();
+        if (line == null) break;
+        send(in, out, line);
+      }
+    }
+  }
+
+  /**
+   * 发送一个请求并打印响应
+   * @return 响应的状态码
+   */
+  private static int send(DataInputStream in, DataOutputStream out, String source)
+          throws IOException {
+    LoxProtocol.writeRequest(out, source);
+    LoxProtocol.Response response = LoxProtocol.readResponse(in);
+    if (response.status == LoxProtocol.OK) {
+      System.out.println(response.body);
+    } else {
+      System.err.print(response.body);
+    }
+    return response.status;
+  }
+}
@@ -0,0 +1,104 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 求值服务压测工具：多个客户端并发发送请求，统计p50/p99延迟和每秒请求数
+ * 默认每个客户端发送ExprGenerator生成的不同表达式，服务端的结果缓存几乎不会命中，测到的是求值的开销；
+ * 指定表达式时所有请求都发送它，测的是缓存命中时的开销
+ */
+public class LoxLoadTest {
+  private static final long SEED = 42;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1 || args.length > 4) {
+      System.out.println("Usage: jlox-loadtest <port | socket path> [clients] [requests per client] [expression]");
+      System.exit(64);
+    }
+    String spec = args[0];
+    int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    int requests = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+    List<List<String>> sources = new ArrayList<>(); // 每个客户端要发送的请求，在计时之前生成好
+    for (int i = 0; i < clients; i++) {
+      sources.add(args.length > 3
+              ? Collections.nCopies(requests, args[3])
+              : generate(SEED + i, requests));
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(clients);
+    List<Future<long[]>> futures = new ArrayList<>();
+    long start = System.nanoTime();
+    for (List<String> client : sources) {
+      futures.add(pool.submit(() -> runClient(spec, client)));
+    }
+
+    long[] latencies = new long[clients * requests];
+    int count = 0;
+    for (Future<long[]> future : futures) {
+      long[] part = future.get();
+      System.arraycopy(part, 0, latencies, count, part.length);
+      count += part.length;
+    }
+    long elapsed = System.nanoTime() - start;
+    pool.shutdown();
+
+    Arrays.sort(latencies);
+    System.out.printf("requests: %d, clients: %d%n", latencies.length, clients);
+    System.out.printf("p50: %.1f us, p99: %.1f us%n",
+            percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3);
+    System.out.printf("throughput: %.0f req/s%n", latencies.length / (elapsed / 1e9));
+  }
+
+  /**
+   * 生成一个客户端的请求，不同的种子生成的表达式基本不重复
+   */
+  private static List<String> generate(long seed, int requests) {
+    ExprGenerator generator = new ExprGenerator(seed, new ExprGenerator.Options());
+    List<String> sources = new ArrayList<>(requests);
+    for (int i = 0; i < requests; i++) sources.add(generator.next());
+    return sources;
+  }
+
+  /**
+   * 一个客户端在同一个连接上顺序发送请求
+   * @return 每个请求的延迟（纳秒）
+   */
+  private static long[] runClient(String spec, List<String> sources)
+          throws IOException {
+    int requests = sources.size();
+    long[] latencies = new long[requests];
+    try (SocketChannel channel = LoxProtocol.connect(spec)) {
+      DataInputStream in = new DataInputStream(
+              new BufferedInputStream(Channels.newInputStream(channel)));
+      DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(Channels.newOutputStream(channel)));
+      for (int i = 0; i < requests; i++) {
+        long begin = System.nanoTime();
+        LoxProtocol.writeRequest(out, sources.get(i));
+        LoxProtocol.readResponse(in);
+        latencies[i] = System.nanoTime() - begin;
+      }
+    }
+    return latencies;
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    if (sorted.length == 0) return 0;
+    int index = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+}
@@ -0,0 +1,114 @@
+package com.craftinginterpreters.lox;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 求值服务的通信协议
+ * 请求帧：int长度 + UTF-8源代码
+ * 响应帧：byte状态码 + int长度 + UTF-8内容（成功时为结果，失败时为错误信息）
+ * 状态码和Lox命令行的退出码保持一致
+ */
+class LoxProtocol {
+  static final byte OK = 0;
+  static final byte COMPILE_ERROR = 65;
+  static final byte RUNTIME_ERROR = 70;
+
+  static final int MAX_FRAME = 64 * 1024 * 1024; // 单帧最大长度，防止错误的长度把内存耗光
+
+  /**
+   * 服务端返回的响应
+   */
+  static class Response {
+    final byte status;
+    final String body;
+
+    Response(byte status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+
+  /**
+   * 解析地址：纯数字为本机TCP端口，否则为Unix domain socket路径
+   * @param spec 地址字符串
+   * @return socket地址
+   */
+  static SocketAddress address(String spec) {
+    if (isPort(spec)) {
+      return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+    }
+    return UnixDomainSocketAddress.of(spec);
+  }
+
+  static ServerSocketChannel bind(String spec) throws IOException {
+    ServerSocketChannel server = isPort(spec)
+            ? ServerSocketChannel.open()
+            : ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(address(spec));
+    return server;
+  }
+
+  static SocketChannel connect(String spec) throws IOException {
+    return SocketChannel.open(address(spec));
+  }
+
+  static void writeRequest(DataOutputStream out, String source) throws IOException {
+    writeString(out, source);
+    out.flush();
+  }
+
+  /**
+   * 读取一个请求
+   * @return 源代码，对方关闭连接时返回null
+   */
+  static String readRequest(DataInputStream in) throws IOException {
+    int length;
+    try {
+      length = in.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    return readString(in, length);
+  }
+
+  static void writeResponse(DataOutputStream out, byte status, String body) throws IOException {
+    out.writeByte(status);
+    writeString(out, body);
+    out.flush();
+  }
+
+  static Response readResponse(DataInputStream in) throws IOException {
+    byte status = in.readByte();
+    return new Response(status, readString(in, in.readInt()));
+  }
+
+  private static void writeString(DataOutputStream out, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in, int length) throws IOException {
+    if (length < 0 || length > MAX_FRAME) {
+      throw new IOException("Invalid frame length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static boolean isPort(String spec) {
+    return !spec.isEmpty() && spec.chars().allMatch(Character::isDigit);
+  }
+}
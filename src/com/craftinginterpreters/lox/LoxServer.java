@@ -0,0 +1,148 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 常驻求值服务：监听本机TCP端口或Unix domain socket，每个连接一个线程，
+ * 每个请求使用独立的ErrorReporter和Interpreter
+ */
+public class LoxServer {
+  private final ServerSocketChannel server;
+  private final ExecutorService connections = newConnectionExecutor();
+  private final ResultCache cache = new ResultCache(100_000, 64L * 1024 * 1024); // 所有连接共用的结果缓存
+  private final StringPool strings = new StringPool(); // 所有连接共用的字符串池
+  private final long maxNodes; // 每个请求的求值预算
+  private final int maxStringLength;
+  private final long timeoutMillis;
+
+  LoxServer(ServerSocketChannel server, long maxNodes, int maxStringLength, long timeoutMillis) {
+    this.server = server;
+    this.maxNodes = maxNodes;
+    this.maxStringLength = maxStringLength;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 4) {
+      System.out.println("Usage: jlox-server <port | socket path> [max nodes] [max string length] [timeout ms]");
+      System.exit(64);
+    }
+    String spec = args[0];
+    long maxNodes = args.length > 1 ? Long.parseLong(args[1]) : Long.MAX_VALUE;
+    int maxStringLength = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+    long timeoutMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+    if (!LoxProtocol.isPort(spec)) {
+      Files.deleteIfExists(Path.of(spec)); // 删除上次遗留的socket文件
+    }
+    LoxServer loxServer = new LoxServer(LoxProtocol.bind(spec),
+            maxNodes, maxStringLength, timeoutMillis);
+    Runtime.getRuntime().addShutdownHook(new Thread( // Ctrl+C或kill时输出一次统计
+            () -> System.err.println("Shutting down, " + loxServer.stats())));
+    System.err.println("Listening on " + spec);
+    loxServer.serve();
+  }
+
+  /**
+   * 接受连接的主循环
+   */
+  void serve() throws IOException {
+    try {
+      for (;;) {
+        SocketChannel channel = server.accept();
+        connections.execute(() -> handle(channel));
+      }
+    } finally {
+      connections.shutdown();
+      server.close();
+    }
+  }
+
+  /**
+   * 处理一个连接上的所有请求，直到客户端关闭连接
+   * @param channel 客户端连接
+   */
+  private void handle(SocketChannel channel) {
+    try (channel) {
+      DataInputStream in = new DataInputStream(
+              new BufferedInputStream(Channels.newInputStream(channel)));
+      DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(Channels.newOutputStream(channel)));
+      for (;;) {
+        String source = LoxProtocol.readRequest(in);
+        if (source == null) break;
+        evaluate(source, out);
+      }
+    } catch (IOException error) {
+      System.err.println("Connection failed: " + error.getMessage());
+    }
+  }
+
+  /**
+   * 缓存和字符串池的统计，服务退出时输出一次
+   */
+  String stats() {
+    return "cache " + cache + ", strings " + strings;
+  }
+
+  /**
+   * 执行一个请求并写回响应
+   * @param source 源代码
+   * @param out 响应输出流
+   */
+  private void evaluate(String source, DataOutputStream out) throws IOException {
+    ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+    ErrorReporter reporter = new ErrorReporter(
+            new PrintStream(diagnostics, true, StandardCharsets.UTF_8));
+    EvalBudget budget = new EvalBudget(maxNodes, maxStringLength,
+            timeoutMillis, TimeUnit.MILLISECONDS);
+    String result;
+    try {
+      result = cache.run(source, reporter, budget, strings);
+    } catch (StackOverflowError error) { // 解析和求值都是递归的，嵌套太深的请求不能影响连接
+      LoxProtocol.writeResponse(out, LoxProtocol.RUNTIME_ERROR, "Expression is nested too deeply.\n");
+      return;
+    } catch (RuntimeException error) { // 解释器自身的缺陷，也只让这一个请求失败
+      System.err.println("Request failed: " + error);
+      LoxProtocol.writeResponse(out, LoxProtocol.RUNTIME_ERROR, "Internal error: " + error + "\n");
+      return;
+    }
+
+    if (reporter.hadError) {
+      LoxProtocol.writeResponse(out, LoxProtocol.COMPILE_ERROR,
+              diagnostics.toString(StandardCharsets.UTF_8));
+    } else if (reporter.hadRuntimeError) {
+      LoxProtocol.writeResponse(out, LoxProtocol.RUNTIME_ERROR,
+              diagnostics.toString(StandardCharsets.UTF_8));
+    } else {
+      LoxProtocol.writeResponse(out, LoxProtocol.OK, result);
+    }
+  }
+
+  /**
+   * 运行时支持虚拟线程（JDK 21+）时每个连接一个虚拟线程，否则退回到缓存线程池
+   * 用反射获取是为了在项目当前的语言级别下也能编译
+   */
+  private static ExecutorService newConnectionExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+              .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+}
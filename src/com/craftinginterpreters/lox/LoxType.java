@@ -0,0 +1,12 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * TypeChecker静态推断出的表达式类型
+ */
+enum LoxType {
+  NUMBER, // Long或Double
+  STRING,
+  BOOLEAN,
+  NIL,
+  UNKNOWN // 只有求值时才能确定，运算节点是这个类型时求值要检查操作数
+}
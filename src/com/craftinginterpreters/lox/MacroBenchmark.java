@@ -0,0 +1,169 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 宏观吞吐量测试：用ExprGenerator生成语料，按Lox.run同样的流程逐个执行，
+ * 以JSON格式输出吞吐量、延迟分位数、分配字节数和GC时间，便于保存下来和以后的结果比较
+ * 参数形如 key=value：seed、size（语料字符数）、depth、fanout、numbers、booleans、
+ * errors、warmup、iterations、pipeline（run或cached）、strings（true时使用字符串池）
+ */
+public class MacroBenchmark {
+  public static void main(String[] args) {
+    Map<String, String> params = parseParams(args, "jlox-bench");
+
+    long seed = Long.parseLong(params.getOrDefault("seed", "42"));
+    long size = Long.parseLong(params.getOrDefault("size", "1000000"));
+    int warmup = Integer.parseInt(params.getOrDefault("warmup", "3"));
+    int iterations = Integer.parseInt(params.getOrDefault("iterations", "5"));
+    String pipeline = params.getOrDefault("pipeline", "run");
+    boolean pooled = Boolean.parseBoolean(params.getOrDefault("strings", "false"));
+    ExprGenerator.Options options = new ExprGenerator.Options();
+    options.maxDepth = Integer.parseInt(params.getOrDefault("depth", "" + options.maxDepth));
+    options.maxFanOut = Integer.parseInt(params.getOrDefault("fanout", "" + options.maxFanOut));
+    options.numberRatio = Double.parseDouble(params.getOrDefault("numbers", "" + options.numberRatio));
+    options.booleanRatio = Double.parseDouble(params.getOrDefault("booleans", "" + options.booleanRatio));
+    options.errorRate = Double.parseDouble(params.getOrDefault("errors", "" + options.errorRate));
+
+    List<String> corpus = new ExprGenerator(seed, options).corpus(size);
+    Runner runner = new Runner(pipeline, pooled);
+    for (int i = 0; i < warmup; i++) runner.runAll(corpus, null);
+
+    long[] latencies = new long[corpus.size() * iterations];
+    long gcCountBefore = gcCount();
+    long gcTimeBefore = gcTime();
+    long allocatedBefore = PhaseStats.allocatedBytes();
+    long start = System.nanoTime();
+    int failures = 0;
+    for (int i = 0; i < iterations; i++) {
+      failures = runner.runAll(corpus, null); // 每轮的错误数都一样
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = allocatedBefore < 0 ? -1 : PhaseStats.allocatedBytes() - allocatedBefore;
+    long gcCount = gcCount() - gcCountBefore;
+    long gcTime = gcTime() - gcTimeBefore;
+
+    // 单独再跑一轮记录每个表达式的延迟，避免计时本身影响上面的吞吐量数据
+    for (int i = 0; i < iterations; i++) {
+      long[] round = new long[corpus.size()];
+      runner.runAll(corpus, round);
+      System.arraycopy(round, 0, latencies, i * corpus.size(), round.length);
+    }
+    Arrays.sort(latencies);
+
+    long expressions = (long) corpus.size() * iterations;
+    long chars = corpus.stream().mapToLong(String::length).sum();
+    StringBuilder json = new StringBuilder();
+    json.append("{\n");
+    field(json, "pipeline", '"' + pipeline + '"');
+    field(json, "strings", pooled);
+    field(json, "seed", seed);
+    field(json, "corpusExpressions", corpus.size());
+    field(json, "corpusChars", chars);
+    field(json, "iterations", iterations);
+    field(json, "errorExpressions", failures);
+    field(json, "expressionsPerSecond", format(expressions / (elapsed / 1e9)));
+    field(json, "charsPerSecond", format(chars * (double) iterations / (elapsed / 1e9)));
+    field(json, "latencyNanos", "{\"p50\": " + percentile(latencies, 0.50) +
+            ", \"p90\": " + percentile(latencies, 0.90) +
+            ", \"p99\": " + percentile(latencies, 0.99) +
+            ", \"max\": " + latencies[latencies.length - 1] + "}");
+    field(json, "allocatedBytesPerExpression", allocated < 0 ? -1 : allocated / expressions);
+    field(json, "gcCount", gcCount);
+    json.append("  \"gcTimeMillis\": ").append(gcTime).append("\n}");
+    System.out.println(json);
+  }
+
+  /**
+   * 按指定的流程执行语料中的每个表达式
+   */
+  private static class Runner {
+    private final ResultCache cache;
+    private final StringPool strings;
+    private final PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+
+    Runner(String pipeline, boolean pooled) {
+      strings = pooled ? new StringPool() : null;
+      switch (pipeline) {
+        case "run": cache = null; break;
+        case "cached": cache = new ResultCache(1_000_000, 256L * 1024 * 1024); break;
+        default: throw new IllegalArgumentException("Unknown pipeline: " + pipeline);
+      }
+    }
+
+    /**
+     * @param latencies 不为空时记录每个表达式的延迟
+     * @return 出错的表达式个数
+     */
+    int runAll(List<String> corpus, long[] latencies) {
+      boolean timed = latencies != null;
+      int failures = 0;
+      for (int i = 0; i < corpus.size(); i++) {
+        long begin = timed ? System.nanoTime() : 0;
+        ErrorReporter reporter = new ErrorReporter(sink);
+        String result = cache != null
+                ? cache.run(corpus.get(i), reporter, null, strings)
+                : Lox.run(corpus.get(i), reporter, null, strings);
+        if (result == null) failures++;
+        if (timed) latencies[i] = System.nanoTime() - begin;
+      }
+      return failures;
+    }
+  }
+
+  /**
+   * 解析 key=value 形式的参数，StreamBenchmark也用它
+   * @param args 命令行参数
+   * @param name 用法提示中的命令名
+   * @return 参数名到值的映射
+   */
+  static Map<String, String> parseParams(String[] args, String name) {
+    Map<String, String> params = new HashMap<>();
+    for (String arg : args) {
+      int split = arg.indexOf('=');
+      if (split < 0) {
+        System.out.println("Usage: " + name + " [key=value]...");
+        System.exit(64);
+      }
+      params.put(arg.substring(0, split), arg.substring(split + 1));
+    }
+    return params;
+  }
+
+  private static void field(StringBuilder json, String name, Object value) {
+    json.append("  \"").append(name).append("\": ").append(value).append(",\n");
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.1f", value);
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    int index = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long gcTime() {
+    long time = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      time += Math.max(0, gc.getCollectionTime());
+    }
+    return time;
+  }
+}
@@ -0,0 +1,64 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外内存的生命周期：源代码映射和token流都从这里分配，close之后再分配、扫描或读取token都会抛出IllegalStateException
+ * 源代码用FileChannel.map映射，不占堆也不占直接内存；token流用直接内存，受-XX:MaxDirectMemorySize限制
+ * close只是放开所有引用，映射和直接内存由JVM在它们不可达后释放
+ */
+class OffHeapArena implements AutoCloseable {
+  static final int CHUNK_SHIFT = 30; // 源代码按1GB分段映射，单个MappedByteBuffer最大只能到2GB
+  static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  private final List<ByteBuffer> buffers = new ArrayList<>();
+  private boolean closed = false;
+
+  /**
+   * 把文件映射到内存
+   * @param path 文件路径
+   * @return 源代码
+   */
+  OffHeapSource mapSource(Path path) throws IOException {
+    ensureOpen();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int count = (int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+      ByteBuffer[] chunks = new ByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long position = (long) i << CHUNK_SHIFT;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(CHUNK_MASK + 1, size - position));
+        buffers.add(chunks[i]);
+      }
+      return new OffHeapSource(this, chunks, size);
+    }
+  }
+
+  /**
+   * 分配一块直接内存
+   * @param capacity 字节数
+   */
+  ByteBuffer allocate(int capacity) {
+    ensureOpen();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+    buffers.add(buffer);
+    return buffer;
+  }
+
+  void ensureOpen() {
+    if (closed) throw new IllegalStateException("Arena is closed.");
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    buffers.clear();
+  }
+}
@@ -0,0 +1,204 @@
+package com.craftinginterpreters.lox;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * 直接扫描堆外的UTF-8源代码，token也写到堆外，规则和Scanner相同
+ * 源代码不会整个解码成String，只有标识符要解码出来查关键字表
+ * 字符串和注释之外的非ASCII字符报错的次数和Scanner相同：每个UTF-16字符报一次
+ */
+class OffHeapScanner {
+  private final OffHeapArena arena;
+  private final OffHeapSource source; // 源代码
+  private final ErrorReporter reporter; // 错误报告
+  private final OffHeapTokens tokens; // 扫描出的token
+  private final long length;
+  private long start = 0; // 扫描源代码的指针
+  private long current = 0;
+  private int line = 1;
+
+  OffHeapScanner(OffHeapArena arena, OffHeapSource source, ErrorReporter reporter) {
+    this.arena = arena;
+    this.source = source;
+    this.reporter = reporter;
+    this.tokens = new OffHeapTokens(arena, source);
+    this.length = source.length();
+  }
+
+  /**
+   * 从源代码中扫描出所有token
+   * @return 含有所有token的列表
+   * @throws IllegalStateException arena已经关闭
+   */
+  OffHeapTokens scanTokens() {
+    arena.ensureOpen(); // 扫描过程中不再检查，OffHeapSource.at是热路径
+    while (!isAtEnd()) {
+      start = current;
+      scanToken();
+    }
+
+    tokens.add(EOF, current, 0, line);
+    return tokens;
+  }
+
+  private void scanToken() {
+    byte c = advance();
+    switch (c) {
+      case '(': addToken(LEFT_PAREN); break;
+      case ')': addToken(RIGHT_PAREN); break;
+      case '{': addToken(LEFT_BRACE); break;
+      case '}': addToken(RIGHT_BRACE); break;
+      case ',': addToken(COMMA); break;
+      case '.': addToken(DOT); break;
+      case '-': addToken(MINUS); break;
+      case '+': addToken(PLUS); break;
+      case ';': addToken(SEMICOLON); break;
+      case '*': addToken(STAR); break;
+      case '?': addToken(QUESTION); break;
+      case ':': addToken(COLON); break;
+      case '!':
+        addToken(match('=') ? BANG_EQUAL : BANG);
+        break;
+      case '=':
+        addToken(match('=') ? EQUAL_EQUAL : EQUAL);
+        break;
+      case '<':
+        addToken(match('=') ? LESS_EQUAL : LESS);
+        break;
+      case '>':
+        addToken(match('=') ? GREATER_EQUAL : GREATER);
+        break;
+      case '/':
+        if (match('/')) {
+          while (!isAtEnd() && source.at(current) != '\n') current++; // 单行注释
+        } else {
+          addToken(SLASH);
+        }
+        break;
+      case ' ':
+      case '\r':
+      case '\t':
+        skipWhitespace();
+        break;
+      case '\n':
+        line++;
+        skipWhitespace();
+        break;
+      case '"': string(); break;
+      default:
+        if (isDigit(c)) {
+          number();
+        } else if (isAlpha(c)) {
+          identifier();
+        } else {
+          // 跳过多字节UTF-8字符的后续字节（10xxxxxx）
+          while (!isAtEnd() && (source.at(current) & 0xC0) == 0x80) current++;
+          reporter.error(line, "Unexpected character.");
+          // 4字节的字符在String中是两个UTF-16代理项，Scanner对每一个都报一次错
+          if ((c & 0xF8) == 0xF0) reporter.error(line, "Unexpected character.");
+        }
+        break;
+    }
+  }
+
+  private void identifier() {
+    while (isAlphaNumeric(peek())) advance();
+
+    TokenType type = Scanner.keywords.get(source.decode(start, (int) (current - start)));
+    if (type == null) type = IDENTIFIER;
+    addToken(type);
+  }
+
+  private void number() {
+    while (isDigit(peek())) advance();
+
+    if (peek() == '.' && isDigit(peekNext())) {
+      advance();
+
+      while (isDigit(peek())) advance();
+    }
+
+    addToken(NUMBER); // 字面量值在OffHeapTokens.get时才转换
+  }
+
+  private void string() {
+    while (!isAtEnd() && source.at(current) != '"') {
+      if (source.at(current) == '\n') line++; // 允许跨行字符串
+      current++;
+    }
+
+    if (isAtEnd()) {
+      reporter.error(line, "Unterminated string.");
+      return;
+    }
+
+    advance(); // 结束引号
+    addToken(STRING);
+  }
+
+  private void skipWhitespace() {
+    while (current < length) {
+      byte c = source.at(current);
+      if (c == '\n') {
+        line++;
+      } else if (c != ' ' && c != '\r' && c != '\t') {
+        break;
+      }
+      current++;
+    }
+  }
+
+  private boolean isAtEnd() {
+    return current >= length;
+  }
+
+  private byte advance() {
+    return source.at(current++);
+  }
+
+  private void addToken(TokenType type) {
+    long size = current - start;
+    if (size > Integer.MAX_VALUE) {
+      reporter.error(line, "Token too long.");
+      return;
+    }
+    if (tokens.size() == OffHeapTokens.MAX_SIZE - 1) { // 留一个位置给EOF
+      reporter.error(line, "Too many tokens.");
+      current = length; // 不再继续扫描
+      return;
+    }
+    tokens.add(type, start, (int) size, line);
+  }
+
+  private boolean match(char expected) {
+    if (isAtEnd()) return false;
+    if (source.at(current) != expected) return false;
+
+    current++;
+    return true;
+  }
+
+  private byte peek() {
+    if (isAtEnd()) return '\0';
+    return source.at(current);
+  }
+
+  private byte peekNext() {
+    if (current + 1 >= length) return '\0';
+    return source.at(current + 1);
+  }
+
+  private boolean isAlpha(byte c) {
+    return (c >= 'a' && c <= 'z') ||
+            (c >= 'A' && c <= 'Z') ||
+            c == '_';
+  }
+
+  private boolean isAlphaNumeric(byte c) {
+    return isAlpha(c) || isDigit(c);
+  }
+
+  private boolean isDigit(byte c) {
+    return c >= '0' && c <= '9';
+  }
+}
@@ -0,0 +1,41 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 映射在堆外的UTF-8源代码，偏移量用long，可以超过2GB
+ */
+class OffHeapSource {
+  private final OffHeapArena arena;
+  private final ByteBuffer[] chunks;
+  private final long length;
+
+  OffHeapSource(OffHeapArena arena, ByteBuffer[] chunks, long length) {
+    this.arena = arena;
+    this.chunks = chunks;
+    this.length = length;
+  }
+
+  long length() {
+    return length;
+  }
+
+  /**
+   * 读取一个字节，不检查arena是否已经关闭，OffHeapScanner.scanTokens开始时检查
+   */
+  byte at(long position) {
+    return chunks[(int) (position >>> OffHeapArena.CHUNK_SHIFT)]
+            .get((int) (position & OffHeapArena.CHUNK_MASK));
+  }
+
+  /**
+   * 把[start, start + length)解码成字符串
+   */
+  String decode(long start, int length) {
+    arena.ensureOpen();
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) bytes[i] = at(start + i);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,86 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * 存在堆外的token流，每个token只记录类型、在源代码中的位置、长度和行号
+ * 实现List<Token>，Parser不用改动就能直接读取；get时才把token还原成Token对象，
+ * 最近取过的几个会缓存起来，因为Parser的peek和previous会反复取同一个token
+ */
+class OffHeapTokens extends AbstractList<Token> implements RandomAccess {
+  private static final int RECORD_SIZE = 24; // 类型、行号、起始位置、长度，各占4、4、8、4字节，补齐到8字节对齐
+  private static final int CHUNK_SHIFT = 16; // 每块65536个token
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+  private static final int CACHE_SIZE = 4; // 必须是2的幂
+  private static final TokenType[] types = TokenType.values();
+  static final int MAX_SIZE = Integer.MAX_VALUE; // List的下标是int，最多这么多个token
+
+  private final OffHeapArena arena;
+  private final OffHeapSource source;
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+  private int size = 0;
+  private final int[] cachedIndexes = new int[CACHE_SIZE];
+  private final Token[] cachedTokens = new Token[CACHE_SIZE];
+
+  OffHeapTokens(OffHeapArena arena, OffHeapSource source) {
+    this.arena = arena;
+    this.source = source;
+  }
+
+  /**
+   * 追加一个token
+   * @param type token类型
+   * @param start 词素在源代码中的起始位置
+   * @param length 词素的字节数
+   * @param line 所在行
+   * @throws IllegalStateException 已经有MAX_SIZE个token，调用方应该先检查size
+   */
+  void add(TokenType type, long start, int length, int line) {
+    if (size == MAX_SIZE) throw new IllegalStateException("Too many tokens.");
+    if ((size & CHUNK_MASK) == 0) chunks.add(arena.allocate(RECORD_SIZE << CHUNK_SHIFT));
+    ByteBuffer chunk = chunks.get(size >>> CHUNK_SHIFT);
+    int offset = (size & CHUNK_MASK) * RECORD_SIZE;
+    chunk.putInt(offset, type.ordinal());
+    chunk.putInt(offset + 4, line);
+    chunk.putLong(offset + 8, start);
+    chunk.putInt(offset + 16, length);
+    size++;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Token get(int index) {
+    if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+    arena.ensureOpen(); // 缓存命中时也检查，close之后的访问一律失败
+    int slot = index & (CACHE_SIZE - 1);
+    Token token = cachedTokens[slot];
+    if (token != null && cachedIndexes[slot] == index) return token;
+
+    ByteBuffer chunk = chunks.get(index >>> CHUNK_SHIFT);
+    int offset = (index & CHUNK_MASK) * RECORD_SIZE;
+    TokenType type = types[chunk.getInt(offset)];
+    int line = chunk.getInt(offset + 4);
+    String lexeme = type == EOF ? "" : source.decode(chunk.getLong(offset + 8), chunk.getInt(offset + 16));
+    Object literal = null;
+    if (type == NUMBER) {
+      literal = Scanner.numberLiteral(lexeme);
+    } else if (type == STRING) {
+      literal = lexeme.substring(1, lexeme.length() - 1);
+    }
+
+    token = new Token(type, lexeme, literal, line);
+    cachedIndexes[slot] = index;
+    cachedTokens[slot] = token;
+    return token;
+  }
+}
@@ -0,0 +1,270 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 并行求值很大的语法树：先算一遍每个子树的节点数，
+ * 左右操作数都不小于阈值的二元表达式把右操作数交给ForkJoinPool并行求值，小于阈值的子树交给Interpreter顺序求值
+ * 大子树部分用显式栈求值，很深的树也不会StackOverflowError
+ * 报告的运行时异常和顺序求值时相同：左操作数出错时直接报告它，左操作数没有出错才会去等右操作数的结果
+ * 出错后外层还没join的右操作数任务都会被停止，正在执行的也会在工作循环中停下来
+ * and、or和条件表达式不并行，先求值左操作数或条件，再决定是否求值、求值哪个分支
+ * 求值预算不适用于这种模式
+ */
+class ParallelInterpreter {
+    static final int DEFAULT_THRESHOLD = 1024; // 子树节点数不小于它时才考虑并行
+
+    private final ErrorReporter reporter; // 错误报告
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private Map<Expr, Integer> sizes; // 节点数不小于threshold的子树，其他子树都认为是小的
+
+    ParallelInterpreter(ErrorReporter reporter) {
+        this(reporter, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    ParallelInterpreter(ErrorReporter reporter, ForkJoinPool pool, int threshold) {
+        this.reporter = reporter;
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * 入口方法，和Interpreter一样，没有经过Interpreter.check的树所有运算都在运行时检查操作数类型
+     * @param expression 语法树
+     * @return 结果字符串，出现运行时异常时返回null
+     */
+    String interpret(Expr expression) {
+        sizes = estimateSizes(expression);
+        EvalTask task = new EvalTask(expression);
+        Object value = pool.invoke(task);
+        if (task.error != null) {
+            reporter.runtimeError(task.error);
+            return null;
+        }
+        return new Interpreter(reporter).stringify(value);
+    }
+
+    private boolean isLarge(Expr expr) {
+        return sizes.containsKey(expr);
+    }
+
+    /**
+     * 用后序遍历算出每个子树的节点数，只记录不小于阈值的
+     */
+    private Map<Expr, Integer> estimateSizes(Expr root) {
+        List<Expr> order = new ArrayList<>(); // 根、右、左的顺序，倒过来就是后序
+        ArrayDeque<Expr> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Expr expr = stack.pop();
+            order.add(expr);
+            for (int i = 0; i < expr.childCount(); i++) stack.push(expr.child(i));
+        }
+
+        Map<Expr, Integer> large = new IdentityHashMap<>();
+        int[] counts = new int[16]; // 已经算好、还没被父节点用掉的子树节点数
+        int top = 0;
+        for (int i = order.size() - 1; i >= 0; i--) {
+            Expr expr = order.get(i);
+            int size = 1;
+            for (int n = expr.childCount(); n > 0; n--) size += counts[--top];
+            if (top == counts.length) counts = Arrays.copyOf(counts, top * 2);
+            counts[top++] = size;
+            if (size >= threshold) large.put(expr, size);
+        }
+        return large;
+    }
+
+    /**
+     * 工作栈上等待操作数的一元或二元运算
+     */
+    private static class Apply {
+        final Expr expr;
+
+        Apply(Expr expr) {
+            this.expr = expr;
+        }
+    }
+
+    /**
+     * 工作栈上等待左操作数的逻辑运算或等待条件的条件表达式，得到值后再决定接下来求值什么
+     */
+    private static class Select {
+        final Expr expr;
+
+        Select(Expr expr) {
+            this.expr = expr;
+        }
+    }
+
+    /**
+     * 工作栈上等待左操作数和已经fork出去的右操作数的二元运算
+     */
+    private static class Join {
+        final Expr.Binary expr;
+        final EvalTask right;
+
+        Join(Expr.Binary expr, EvalTask right) {
+            this.expr = expr;
+            this.right = right;
+        }
+    }
+
+    /**
+     * 求值一个大子树的任务，运行时异常记录在error中而不是抛出去，由等待它的任务决定报告哪一个
+     */
+    private class EvalTask extends RecursiveTask<Object> {
+        private final Expr root;
+        private volatile boolean stopped = false; // 结果已经用不到了，由fork它的任务设置，工作循环中检查
+        private final Deque<EvalTask> forked = new ConcurrentLinkedDeque<>(); // fork出去、还没有join的任务，后fork的先join
+        RuntimeError error;
+
+        EvalTask(Expr root) {
+            this.root = root;
+        }
+
+        /**
+         * 结果已经用不到了：cancel只能让还没开始的任务不再执行，已经在执行的在工作循环中看到标记后停止，
+         * 它fork出去的任务也一起停掉，包括正在被它join等待的
+         */
+        void stop() {
+            stopped = true;
+            cancel(false);
+            stopForked();
+        }
+
+        private void stopForked() {
+            for (EvalTask task : forked) task.stop();
+        }
+
+        /**
+         * fork右操作数，先登记再检查标记，和stop()并发时两边至少有一边会停掉它
+         */
+        private EvalTask fork(Expr.Binary binary) {
+            EvalTask right = new EvalTask(binary.right);
+            forked.push(right);
+            right.fork();
+            if (stopped) right.stop();
+            return right;
+        }
+
+        @Override
+        protected Object compute() {
+            try {
+                return evaluate();
+            } catch (RuntimeError error) {
+                stopForked(); // 外层等着的右操作数已经用不到了
+                this.error = error;
+                return null;
+            } catch (CancellationException e) { // 已经停止，join到的任务被取消了
+                return null;
+            }
+        }
+
+        private Object evaluate() {
+            ArrayDeque<Object> work = new ArrayDeque<>(); // Expr、Apply、Select或Join
+            Interpreter interpreter = new Interpreter(reporter);
+            List<Object> values = new ArrayList<>(); // 操作数栈，值可能是null（nil）
+            work.push(root);
+            while (!work.isEmpty()) {
+                if (stopped) return null; // stop()已经停掉了forked中的任务
+                Object item = work.pop();
+                if (item instanceof Join) {
+                    Join join = (Join)item;
+                    Object right = join.right.join();
+                    forked.removeFirstOccurrence(join.right);
+                    if (join.right.error != null) throw join.right.error;
+                    Object left = pop(values);
+                    values.add(interpreter.binary(join.expr, left, right));
+                } else if (item instanceof Select) {
+                    select(work, values, interpreter, ((Select)item).expr);
+                } else if (item instanceof Apply) {
+                    Expr expr = ((Apply)item).expr;
+                    if (expr.kind == Expr.UNARY) {
+                        values.add(interpreter.unary((Expr.Unary)expr, pop(values)));
+                    } else {
+                        Object right = pop(values);
+                        Object left = pop(values);
+                        values.add(interpreter.binary((Expr.Binary)expr, left, right));
+                    }
+                } else {
+                    expand(work, values, interpreter, (Expr)item);
+                }
+            }
+            return values.get(0);
+        }
+
+        /**
+         * 左操作数或条件已经求值，短路时它就是结果，否则把要求值的操作数或分支压栈
+         */
+        private void select(ArrayDeque<Object> work, List<Object> values,
+                            Interpreter interpreter, Expr expr) {
+            Object value = pop(values);
+            if (expr.kind == Expr.LOGICAL) {
+                Expr.Logical logical = (Expr.Logical)expr;
+                if (interpreter.shortCircuits(logical, value)) {
+                    values.add(value);
+                } else {
+                    work.push(logical.right);
+                }
+            } else {
+                Expr.Conditional conditional = (Expr.Conditional)expr;
+                work.push(interpreter.isTruthy(value) ? conditional.thenBranch : conditional.elseBranch);
+            }
+        }
+
+        /**
+         * 展开一个节点：小子树直接顺序求值，大子树把运算和操作数按求值顺序压栈
+         */
+        private void expand(ArrayDeque<Object> work, List<Object> values,
+                            Interpreter interpreter, Expr expr) {
+            if (!isLarge(expr)) {
+                values.add(interpreter.evaluate(expr));
+                return;
+            }
+            switch (expr.kind) {
+                case Expr.GROUPING:
+                    work.push(((Expr.Grouping)expr).expression);
+                    return;
+                case Expr.UNARY:
+                    work.push(new Apply(expr));
+                    work.push(((Expr.Unary)expr).right);
+                    return;
+                case Expr.BINARY:
+                    Expr.Binary binary = (Expr.Binary)expr;
+                    if (isLarge(binary.left) && isLarge(binary.right)) {
+                        work.push(new Join(binary, fork(binary)));
+                    } else {
+                        work.push(new Apply(binary));
+                        work.push(binary.right);
+                    }
+                    work.push(binary.left);
+                    return;
+                case Expr.LOGICAL:
+                    work.push(new Select(expr));
+                    work.push(((Expr.Logical)expr).left);
+                    return;
+                case Expr.CONDITIONAL:
+                    work.push(new Select(expr));
+                    work.push(((Expr.Conditional)expr).condition);
+                    return;
+            }
+            values.add(interpreter.evaluate(expr));
+        }
+
+        private Object pop(List<Object> values) {
+            return values.remove(values.size() - 1);
+        }
+    }
+}
@@ -10,10 +10,12 @@ import static com.craftinginterpreters.lox.TokenType.*;
 class Parser {
   private static class ParseError extends RuntimeException {} // 异常处理类
   private final List<Token> tokens; // scan扫描到的token
+  private final ErrorReporter reporter; // 错误报告
   private int current = 0; // tokens索引
 
-  Parser(List<Token> tokens) { // 构造函数
+  Parser(List<Token> tokens, ErrorReporter reporter) { // 构造函数
     this.tokens = tokens;
+    this.reporter = reporter;
   }
   Expr parse() { // 调用这个方法进行解析
     try {
@@ -22,9 +24,46 @@ class Parser {
       return null;
     }
   }
-  // expression     → equality
+  // expression     → conditional
   private Expr expression() {
-    return equality();
+    return conditional();
+  }
+  // conditional    → logic_or ( "?" expression ":" conditional )? ;
+  private Expr conditional() {
+    Expr expr = or();
+
+    if (match(QUESTION)) {
+      Expr thenBranch = expression();
+      consume(COLON, "Expect ':' after then branch of conditional expression.");
+      Expr elseBranch = conditional(); // 右结合，a ? b : c ? d : e 即 a ? b : (c ? d : e)
+      expr = new Expr.Conditional(expr, thenBranch, elseBranch);
+    }
+
+    return expr;
+  }
+  // logic_or       → logic_and ( "or" logic_and )* ;
+  private Expr or() {
+    Expr expr = and();
+
+    while (match(OR)) {
+      Token operator = previous();
+      Expr right = and();
+      expr = new Expr.Logical(expr, operator, right);
+    }
+
+    return expr;
+  }
+  // logic_and      → equality ( "and" equality )* ;
+  private Expr and() {
+    Expr expr = equality();
+
+    while (match(AND)) {
+      Token operator = previous();
+      Expr right = equality();
+      expr = new Expr.Logical(expr, operator, right);
+    }
+
+    return expr;
   }
   // equality       → comparison ( ( "!=" | "==" ) comparison )* ;
   private Expr equality() {
@@ -138,7 +177,7 @@ class Parser {
     return tokens.get(current - 1);
   }
   private ParseError error(Token token, String message) {
-    Lox.error(token, message);
+    reporter.error(token, message);
     return new ParseError();
   }
   private void synchronize() { // 实现同步功能，发现错误后丢弃一部分token重新回到正轨
@@ -0,0 +1,109 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * --stats模式下统计每个阶段（扫描、解析、求值）的耗时、CPU时间和分配的字节数
+ * 只统计当前线程，--parallel模式下ForkJoinPool工作线程的开销不计入
+ */
+class PhaseStats {
+  static final int SCAN = 0;
+  static final int PARSE = 1;
+  static final int INTERPRET = 2;
+  private static final String[] NAMES = {"scan", "parse", "interpret"};
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private static final boolean allocationSupported =
+          threads instanceof com.sun.management.ThreadMXBean &&
+          ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+
+  private final long[] wall = new long[NAMES.length];
+  private final long[] cpu = new long[NAMES.length];
+  private final long[] allocated = new long[NAMES.length];
+  private long markWall; // 上一次begin或end时的计数
+  private long markCpu;
+  private long markAllocated;
+  int tokens = 0; // 扫描出的token数
+  int nodes = 0; // 语法树节点数
+
+  /**
+   * 开始计时，之后的第一个end统计的就是从这里开始的阶段
+   */
+  void begin() {
+    markWall = System.nanoTime();
+    markCpu = cpuTime();
+    markAllocated = allocatedBytes();
+  }
+
+  /**
+   * 结束一个阶段并开始下一个阶段的计时
+   * @param phase SCAN、PARSE或INTERPRET
+   */
+  void end(int phase) {
+    long nowWall = System.nanoTime();
+    long nowCpu = cpuTime();
+    long nowAllocated = allocatedBytes();
+    wall[phase] += nowWall - markWall;
+    cpu[phase] += nowCpu - markCpu;
+    allocated[phase] += nowAllocated - markAllocated;
+    markWall = nowWall;
+    markCpu = nowCpu;
+    markAllocated = nowAllocated;
+  }
+
+  /**
+   * 输出统计结果
+   * @param out 输出位置，一般是标准错误，避免和结果混在一起
+   */
+  void print(PrintStream out) {
+    long totalWall = 0, totalCpu = 0, totalAllocated = 0;
+    for (int i = 0; i < NAMES.length; i++) {
+      line(out, NAMES[i], wall[i], cpu[i], allocated[i]);
+      totalWall += wall[i];
+      totalCpu += cpu[i];
+      totalAllocated += allocated[i];
+    }
+    line(out, "total", totalWall, totalCpu, totalAllocated);
+    out.println("[stats] tokens " + tokens + ", nodes " + nodes);
+  }
+
+  private static void line(PrintStream out, String name, long wall, long cpu, long allocated) {
+    out.println(String.format(Locale.ROOT, "[stats] %-9s wall %9.3f ms  cpu %9.3f ms  alloc %s",
+            name, wall / 1e6, cpu / 1e6, allocationSupported ? allocated + " B" : "n/a"));
+  }
+
+  /**
+   * 统计语法树的节点数，用显式栈遍历，很深的树也不会StackOverflowError
+   */
+  static int countNodes(Expr root) {
+    if (root == null) return 0;
+    int count = 0;
+    ArrayDeque<Expr> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      Expr expr = stack.pop();
+      count++;
+      for (int i = 0; i < expr.childCount(); i++) stack.push(expr.child(i));
+    }
+    return count;
+  }
+
+  private static long cpuTime() {
+    return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+  }
+
+  /**
+   * 当前线程已分配的字节数，JVM不支持时返回-1，MacroBenchmark也用它
+   */
+  static long allocatedBytes() {
+    if (allocationSupported) {
+      return ((com.sun.management.ThreadMXBean) threads)
+              .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
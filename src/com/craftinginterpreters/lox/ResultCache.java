@@ -0,0 +1,197 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 表达式结果缓存：Lox表达式没有变量和副作用，同样的源代码总是得到同样的结果或运行时异常。
+ * 按规范化后的源代码分段加锁，每段是一个按访问顺序排列的LinkedHashMap，
+ * 条目数或总权重（源代码和结果的字符数）超出上限时淘汰最久未使用的条目
+ */
+class ResultCache {
+  private static final int SEGMENTS = 16; // 分段数，必须是2的幂
+
+  /**
+   * 缓存的结果：result和error恰好有一个不为null
+   */
+  static class Entry {
+    final String result;
+    final RuntimeError error;
+    final long weight;
+
+    Entry(String key, String result, RuntimeError error) {
+      this.result = result;
+      this.error = error;
+      this.weight = key.length() + (result != null ? result.length() : error.getMessage().length());
+    }
+  }
+
+  /**
+   * 一个分段，自己负责按条目数和权重淘汰
+   */
+  private class Segment {
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    synchronized Entry get(String key) {
+      return map.get(key);
+    }
+
+    synchronized void put(String key, Entry entry) {
+      Entry old = map.put(key, entry);
+      if (old != null) weight -= old.weight;
+      weight += entry.weight;
+
+      Iterator<Map.Entry<String, Entry>> eldest = map.entrySet().iterator();
+      while (map.size() > maxEntriesPerSegment || weight > maxWeightPerSegment) {
+        Entry evicted = eldest.next().getValue();
+        eldest.remove();
+        weight -= evicted.weight;
+        evictions.increment();
+      }
+    }
+  }
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+  private final int maxEntriesPerSegment;
+  private final long maxWeightPerSegment;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param maxEntries 最多缓存的条目数
+   * @param maxWeight 最大总权重（字符数）
+   */
+  ResultCache(int maxEntries, long maxWeight) {
+    this.maxEntriesPerSegment = Math.max(1, maxEntries / SEGMENTS);
+    this.maxWeightPerSegment = Math.max(1, maxWeight / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment();
+  }
+
+  /**
+   * 带缓存地执行源代码，命中时直接返回结果或重新报告缓存的运行时异常，未命中时用字符串池执行
+   * 编译错误和预算异常不缓存：前者没有结果，后者取决于调用方给的预算
+   * @param source 程序源代码
+   * @param reporter 本次执行的错误报告
+   * @param budget 求值预算，为null表示不限制
+   * @param strings 字符串池，为null表示不合并
+   * @return 结果字符串，出现错误时返回null
+   */
+  String run(String source, ErrorReporter reporter, EvalBudget budget, StringPool strings) {
+    String key = normalize(source);
+    Entry entry = get(key);
+    if (entry != null) {
+      if (entry.error == null) return entry.result;
+      reporter.runtimeError(entry.error);
+      return null;
+    }
+
+    RuntimeError before = reporter.lastRuntimeError;
+    String result = Lox.run(source, reporter, budget, strings);
+    if (result != null) {
+      put(key, new Entry(key, result, null));
+    } else if (reporter.lastRuntimeError != before &&
+            !(reporter.lastRuntimeError instanceof BudgetExceededError)) {
+      put(key, new Entry(key, null, reporter.lastRuntimeError));
+    }
+    return result;
+  }
+
+  Entry get(String key) {
+    Entry entry = segmentFor(key).get(key);
+    if (entry != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return entry;
+  }
+
+  void put(String key, Entry entry) {
+    segmentFor(key).put(key, entry);
+  }
+
+  long hits() {
+    return hits.sum();
+  }
+
+  long misses() {
+    return misses.sum();
+  }
+
+  long evictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "hits: " + hits() + ", misses: " + misses() + ", evictions: " + evictions();
+  }
+
+  private Segment segmentFor(String key) {
+    int hash = key.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+  }
+
+  /**
+   * 规范化源代码：去掉字符串字面量以外的空格、制表符、回车和注释，
+   * 只在去掉后会让两个token粘在一起的地方保留一个空格。换行要保留，因为错误信息里有行号
+   * @param source 程序源代码
+   * @return 规范化后的源代码
+   */
+  static String normalize(String source) {
+    StringBuilder builder = new StringBuilder(source.length());
+    boolean inString = false;
+    boolean pendingSpace = false;
+    for (int i = 0; i < source.length(); i++) {
+      char c = source.charAt(i);
+      if (inString) {
+        builder.append(c);
+        if (c == '"') inString = false;
+        continue;
+      }
+      switch (c) {
+        case ' ':
+        case '\r':
+        case '\t':
+          pendingSpace = builder.length() > 0;
+          continue;
+        case '/':
+          if (i + 1 < source.length() && source.charAt(i + 1) == '/') {
+            while (i + 1 < source.length() && source.charAt(i + 1) != '\n') i++; // 跳过注释
+            continue;
+          }
+          break;
+        case '\n':
+          pendingSpace = false;
+          break;
+        case '"':
+          inString = true;
+          break;
+      }
+      if (pendingSpace && needsSpace(builder.charAt(builder.length() - 1), c)) {
+        builder.append(' ');
+      }
+      pendingSpace = false;
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * 判断两个字符之间的空白能否去掉：去掉后可能组成同一个标识符、数字或双字符token时不能去掉
+   */
+  private static boolean needsSpace(char previous, char next) {
+    if (isWordChar(previous) && isWordChar(next)) return true;
+    if (next == '=') return previous == '!' || previous == '=' || previous == '<' || previous == '>';
+    return previous == '/' && next == '/';
+  }
+
+  private static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+            (c >= '0' && c <= '9') || c == '_' || c == '.';
+  }
+}
@@ -12,11 +12,13 @@ import static com.craftinginterpreters.lox.TokenType.*;
  */
 class Scanner {
   private final String source; // 源代码
+  private final ErrorReporter reporter; // 错误报告
+  private final StringPool strings; // 字符串字面量放进这个池，为null表示不合并
   private final List<Token> tokens = new ArrayList<>(); // 扫描出的token
   private int start = 0; // 扫描源代码的指针
   private int current = 0;
   private int line = 1;
-  private static final Map<String, TokenType> keywords; // 存储关键字的map
+  static final Map<String, TokenType> keywords; // 存储关键字的map，OffHeapScanner也会用到
 
   static {
     keywords = new HashMap<>();
@@ -38,8 +40,14 @@ class Scanner {
     keywords.put("while",  WHILE);
   }
 
-  Scanner(String source) {
+  Scanner(String source, ErrorReporter reporter) {
+    this(source, reporter, null);
+  }
+
+  Scanner(String source, ErrorReporter reporter, StringPool strings) {
     this.source = source;
+    this.reporter = reporter;
+    this.strings = strings;
   }
 
   /**
@@ -73,6 +81,8 @@ class Scanner {
       case '+': addToken(PLUS); break;
       case ';': addToken(SEMICOLON); break;
       case '*': addToken(STAR); break;
+      case '?': addToken(QUESTION); break;
+      case ':': addToken(COLON); break;
       case '!': // 2. 有些token可能有两个字符，所以还要判断一下后面的那个字符
         addToken(match('=') ? BANG_EQUAL : BANG);
         break;
@@ -88,7 +98,7 @@ class Scanner {
       case '/': // 可能为更长的token，此处可能为注释或除法
         if (match('/')) {
           // A comment goes until the end of the line.
-          while (peek() != '\n' && !isAtEnd()) advance(); // 使用while循环消耗注释内容，单行注释
+          current = indexOrEnd('\n', current); // 直接跳到行尾，单行注释
         } else {
           addToken(SLASH);
         }
@@ -97,9 +107,11 @@ class Scanner {
       case '\r':
       case '\t':
         // Ignore whitespace.
+        skipWhitespace();
         break;
       case '\n':
         line++;
+        skipWhitespace();
         break;
       case '"': string(); break; // 表示字符串字面量开始了,调用string方法解析它
       default: // 若没有对应的值则说明用户输入了数字，关键字或非法值
@@ -108,7 +120,7 @@ class Scanner {
         } else if (isAlpha(c)) {
           identifier(); // 为标识符则调用identifier方法处理
         } else {
-          Lox.error(line, "Unexpected character.");
+          reporter.error(line, "Unexpected character.");
         }
         break;
     }
@@ -127,7 +139,7 @@ class Scanner {
   }
 
   /**
-   * 处理数字字面量，包括浮点数
+   * 处理数字字面量，整数为Long，带小数部分的为Double
    */
   private void number() {
     while (isDigit(peek())) advance(); // 消耗掉之后的数字
@@ -140,20 +152,33 @@ class Scanner {
       while (isDigit(peek())) advance();
     }
 
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    addToken(NUMBER, numberLiteral(source.substring(start, current)));
+  }
+
+  /**
+   * 把数字词素转换成字面量值：不超过2^53的整数用Long表示，在这个范围内和Double的值完全一致；
+   * 其他情况还是用Double
+   * @param text 数字词素
+   * @return Long或Double
+   */
+  static Object numberLiteral(String text) {
+    if (text.length() <= 16 && text.indexOf('.') < 0) {
+      long value = Long.parseLong(text);
+      if (value <= Interpreter.MAX_EXACT) return value;
+    }
+    return Double.parseDouble(text);
   }
 
   /**
    * 处理字符串字面量
    */
   private void string() {
-    while (peek() != '"' && !isAtEnd()) {
-      if (peek() == '\n') line++; // 允许跨行字符串
-      advance();
-    }
+    int end = indexOrEnd('"', current); // 结束引号的位置
+    line += countNewlines(current, end); // 允许跨行字符串
+    current = end;
 
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated string."); // 报错，字符串只有开始没有结束的冒号
+      reporter.error(line, "Unterminated string."); // 报错，字符串只有开始没有结束的冒号
       return;
     }
 
@@ -162,9 +187,48 @@ class Scanner {
 
     // Trim the surrounding quotes.
     String value = source.substring(start + 1, current - 1); // 去掉引号截取出字符串
+    if (strings != null) value = strings.intern(value); // 相同的字面量共用一个对象
     addToken(STRING, value); // 添加到token列表中
   }
 
+  /**
+   * 跳过连续的空白字符，顺便统计其中的换行
+   * 空白一般成片出现，在这里一次处理完比每个字符都回到scanToken快
+   */
+  private void skipWhitespace() {
+    int length = source.length();
+    while (current < length) {
+      char c = source.charAt(current);
+      if (c == '\n') {
+        line++;
+      } else if (c != ' ' && c != '\r' && c != '\t') {
+        break;
+      }
+      current++;
+    }
+  }
+
+  /**
+   * 从from开始查找字符c，找不到时返回源代码长度
+   * String.indexOf是JVM的内建函数，会用SIMD指令成块比较，比逐个字符peek快得多
+   */
+  private int indexOrEnd(char c, int from) {
+    int index = source.indexOf(c, from);
+    return index < 0 ? source.length() : index;
+  }
+
+  /**
+   * 统计[from, to)之间的换行数，只看这个区间内的字符：
+   * 用indexOf找换行会一直找到区间后面的下一个换行，单行的源代码里每个字符串都要扫到文件末尾
+   */
+  private int countNewlines(int from, int to) {
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      if (source.charAt(i) == '\n') count++;
+    }
+    return count;
+  }
+
   /**
    * 判断是否读文原文件
    * @return
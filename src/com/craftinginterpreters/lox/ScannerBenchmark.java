@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * 测量Scanner的吞吐量，两份源代码大小相近：
+ * 一份是多行的、混有空白、注释和字符串的普通脚本，一份是只有一行、由大量字符串拼接组成的生成脚本
+ * 单行的那份用来发现和源代码长度成平方关系的扫描（比如每个字符串都往后找下一个换行）
+ */
+public class ScannerBenchmark {
+  private static final int WARMUP = 5;
+  private static final int ITERATIONS = 10;
+
+  public static void main(String[] args) {
+    int lines = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    StringBuilder multiLine = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      multiLine.append("    (1 + 2) * \"some string body\"   // a trailing comment\n\n");
+    }
+    StringBuilder singleLine = new StringBuilder("\"ab\"");
+    while (singleLine.length() < multiLine.length()) singleLine.append(" + \"ab\"");
+
+    report("multi-line", multiLine.toString());
+    report("single-line strings", singleLine.toString());
+  }
+
+  private static void report(String name, String source) {
+    double time = measure(source);
+    System.out.printf("%-20s %6.1f MB/s (%d chars)%n", name, source.length() / time * 1e3, source.length());
+  }
+
+  /**
+   * 平均每次扫描整个源代码的耗时（纳秒）
+   */
+  private static double measure(String source) {
+    ErrorReporter reporter = new ErrorReporter(new PrintStream(OutputStream.nullOutputStream()));
+    for (int i = 0; i < WARMUP; i++) new Scanner(source, reporter).scanTokens();
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) new Scanner(source, reporter).scanTokens();
+    return (System.nanoTime() - start) / (double) ITERATIONS;
+  }
+}
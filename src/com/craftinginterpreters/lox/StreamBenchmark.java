@@ -0,0 +1,94 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 流式模式的吞吐量测试：同一份语料（每行一个表达式）分别用单线程逐行循环（和runPrompt相同，只是不打印提示符）
+ * 和StreamPipeline处理，输出到空流，以JSON格式输出两者的吞吐量和加速比
+ * 流水线的收益取决于可用的CPU数，单核机器上只有额外的线程切换开销
+ * 参数形如 key=value：seed、size（语料字符数）、depth、errors、warmup、iterations、batch、queue
+ */
+public class StreamBenchmark {
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Map<String, String> params = MacroBenchmark.parseParams(args, "jlox-stream-bench");
+
+    long seed = Long.parseLong(params.getOrDefault("seed", "42"));
+    long size = Long.parseLong(params.getOrDefault("size", "4000000"));
+    int warmup = Integer.parseInt(params.getOrDefault("warmup", "3"));
+    int iterations = Integer.parseInt(params.getOrDefault("iterations", "5"));
+    int batch = Integer.parseInt(params.getOrDefault("batch", "" + StreamPipeline.DEFAULT_BATCH_SIZE));
+    int queue = Integer.parseInt(params.getOrDefault("queue", "" + StreamPipeline.DEFAULT_QUEUE_CAPACITY));
+    ExprGenerator.Options options = new ExprGenerator.Options();
+    options.maxDepth = Integer.parseInt(params.getOrDefault("depth", "" + options.maxDepth));
+    options.errorRate = Double.parseDouble(params.getOrDefault("errors", "" + options.errorRate));
+
+    List<String> corpus = new ExprGenerator(seed, options).corpus(size);
+    byte[] input = (String.join("\n", corpus) + "\n").getBytes(StandardCharsets.UTF_8);
+    PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+
+    for (int i = 0; i < warmup; i++) {
+      serial(reader(input), sink, sink);
+      new StreamPipeline(reader(input), sink, sink, batch, queue).run();
+    }
+    long serialTime = 0, pipelinedTime = 0;
+    for (int i = 0; i < iterations; i++) { // 交替执行，减少机器负载变化的影响
+      long start = System.nanoTime();
+      serial(reader(input), sink, sink);
+      serialTime += System.nanoTime() - start;
+      start = System.nanoTime();
+      new StreamPipeline(reader(input), sink, sink, batch, queue).run();
+      pipelinedTime += System.nanoTime() - start;
+    }
+
+    long expressions = (long) corpus.size() * iterations;
+    StringBuilder json = new StringBuilder();
+    json.append("{\n");
+    json.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+    json.append("  \"corpusExpressions\": ").append(corpus.size()).append(",\n");
+    json.append("  \"batch\": ").append(batch).append(",\n");
+    json.append("  \"queue\": ").append(queue).append(",\n");
+    json.append("  \"serialExpressionsPerSecond\": ")
+            .append(format(expressions / (serialTime / 1e9))).append(",\n");
+    json.append("  \"pipelinedExpressionsPerSecond\": ")
+            .append(format(expressions / (pipelinedTime / 1e9))).append(",\n");
+    json.append("  \"speedup\": ").append(String.format(Locale.ROOT, "%.2f",
+            serialTime / (double) pipelinedTime)).append("\n}");
+    System.out.println(json);
+  }
+
+  /**
+   * 和Lox.runPrompt相同的逐行循环，去掉了提示符
+   */
+  private static void serial(BufferedReader reader, PrintStream out, PrintStream err) throws IOException {
+    ErrorReporter reporter = new ErrorReporter(err);
+    for (;;) {
+      String line = reader.readLine();
+      if (line == null) break;
+      List<Token> tokens = new Scanner(line, reporter).scanTokens();
+      Expr expression = new Parser(tokens, reporter).parse();
+      if (!reporter.hadError) {
+        Interpreter interpreter = new Interpreter(reporter);
+        String result = interpreter.check(expression) ? interpreter.interpret(expression) : null;
+        if (result != null) out.println(result);
+      }
+      reporter.hadError = false;
+    }
+  }
+
+  private static BufferedReader reader(byte[] input) {
+    return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.1f", value);
+  }
+}
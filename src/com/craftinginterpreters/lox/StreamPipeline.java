@@ -0,0 +1,221 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 非交互的流式模式：逐行读取表达式，读取、扫描、解析、求值、输出五个阶段各用一个线程，
+ * 阶段之间通过有界队列按批传递，下游处理不过来时上游阻塞在put上（背压），内存占用有上限
+ * 每行的结果和错误信息和在命令行逐行执行时相同，按输入的顺序输出，不打印提示符
+ */
+class StreamPipeline {
+  static final int DEFAULT_BATCH_SIZE = 64; // 每批最多的行数，批太大时数据在阶段之间传递时已经不在缓存中
+  static final int DEFAULT_QUEUE_CAPACITY = 8; // 每个队列最多积压的批数
+
+  private static final Batch END = new Batch(0); // 输入结束的标记
+  private static final int SCAN = 0; // 会报告错误的阶段
+  private static final int PARSE = 1;
+  private static final int INTERPRET = 2;
+
+  private final BufferedReader in;
+  private final PrintStream out;
+  private final PrintStream err;
+  private final int batchSize;
+  private final int queueCapacity;
+  private final List<Thread> threads = new ArrayList<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>(); // 第一个出错阶段的异常
+
+  /**
+   * 一批输入行，每个阶段填写自己负责的数组，经过队列传递保证下一个阶段能看到
+   * 整批的错误信息写在同一个缓冲区里，按阶段、行的顺序依次追加，marks记录每个阶段处理完每一行时的位置，
+   * 输出时再按行拼回去，和逐行执行时的顺序相同；不给每行单独建PrintStream，它的创建开销比求值还大
+   */
+  private static class Batch {
+    final String[] lines;
+    int size = 0;
+    final ErrorReporter[] reporters; // 每行一个，各自记录hadError
+    final List<List<Token>> tokens;
+    final Expr[] expressions;
+    final String[] results;
+    final ByteArrayOutputStream diagnostics = new ByteArrayOutputStream(0);
+    final PrintStream diagnosticStream = new PrintStream(diagnostics);
+    final int[] marks; // marks[stage * size + line]：该阶段处理完该行后diagnostics的长度
+
+    Batch(int capacity) {
+      lines = new String[capacity];
+      reporters = new ErrorReporter[capacity];
+      tokens = new ArrayList<>(capacity);
+      expressions = new Expr[capacity];
+      results = new String[capacity];
+      marks = new int[3 * capacity];
+    }
+
+    void mark(int stage, int line) {
+      marks[stage * size + line] = diagnostics.size();
+    }
+
+    /**
+     * 某个阶段处理某一行时写入的错误信息的起始位置
+     */
+    int from(int stage, int line) {
+      int index = stage * size + line;
+      return index == 0 ? 0 : marks[index - 1];
+    }
+  }
+
+  StreamPipeline(BufferedReader in, PrintStream out, PrintStream err) {
+    this(in, out, err, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  StreamPipeline(BufferedReader in, PrintStream out, PrintStream err, int batchSize, int queueCapacity) {
+    this.in = in;
+    this.out = out;
+    this.err = err;
+    this.batchSize = batchSize;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * 处理完整个输入后返回
+   * @throws IOException 读取输入出错
+   */
+  void run() throws IOException, InterruptedException {
+    BlockingQueue<Batch> read = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<Batch> scanned = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<Batch> evaluated = new ArrayBlockingQueue<>(queueCapacity);
+
+    addStage("read", () -> read(read));
+    stage("scan", read, scanned, this::scan);
+    stage("parse", scanned, parsed, this::parse);
+    stage("interpret", parsed, evaluated, this::interpret);
+    stage("write", evaluated, null, batch -> write(batch, evaluated.isEmpty()));
+    for (Thread thread : threads) thread.start();
+    // 读取阶段可能阻塞在不能中断的readLine上，不等它；正常结束时END已经经过了所有阶段
+    for (Thread thread : threads.subList(1, threads.size())) thread.join();
+
+    out.flush();
+    Throwable error = failure.get();
+    if (error instanceof IOException) throw (IOException) error;
+    if (error instanceof RuntimeException) throw (RuntimeException) error;
+    if (error instanceof Error) throw (Error) error;
+  }
+
+  /**
+   * 读取阶段：先阻塞读一行，之后只读已经到达的行，输入很慢时不会为了凑满一批而等待
+   */
+  private void read(BlockingQueue<Batch> output) throws IOException, InterruptedException {
+    for (;;) {
+      String line = in.readLine();
+      if (line == null) break;
+      Batch batch = new Batch(batchSize);
+      batch.lines[batch.size++] = line;
+      while (batch.size < batchSize && in.ready() && (line = in.readLine()) != null) {
+        batch.lines[batch.size++] = line;
+      }
+      output.put(batch);
+      if (line == null) break;
+    }
+    output.put(END);
+  }
+
+  private void scan(Batch batch) {
+    for (int i = 0; i < batch.size; i++) {
+      batch.reporters[i] = new ErrorReporter(batch.diagnosticStream);
+      batch.tokens.add(new Scanner(batch.lines[i], batch.reporters[i]).scanTokens());
+      batch.mark(SCAN, i);
+    }
+  }
+
+  private void parse(Batch batch) {
+    for (int i = 0; i < batch.size; i++) {
+      batch.expressions[i] = new Parser(batch.tokens.get(i), batch.reporters[i]).parse();
+      batch.mark(PARSE, i);
+    }
+    batch.tokens.clear();
+  }
+
+  private void interpret(Batch batch) {
+    for (int i = 0; i < batch.size; i++) {
+      ErrorReporter reporter = batch.reporters[i];
+      if (!reporter.hadError) { // Stop if there was a syntax error.
+        Interpreter interpreter = new Interpreter(reporter);
+        if (interpreter.check(batch.expressions[i])) {
+          batch.results[i] = interpreter.interpret(batch.expressions[i]);
+        }
+      }
+      batch.expressions[i] = null;
+      batch.mark(INTERPRET, i);
+    }
+  }
+
+  /**
+   * 输出阶段：一批的结果拼好后一次写出，后面没有积压的批时才flush
+   * 出现错误信息时先把之前的结果写出去，保持结果和错误信息的相对顺序
+   */
+  private void write(Batch batch, boolean idle) {
+    StringBuilder pending = new StringBuilder();
+    byte[] errors = batch.diagnostics.size() > 0 ? batch.diagnostics.toByteArray() : null;
+    for (int i = 0; i < batch.size; i++) {
+      if (batch.results[i] != null) pending.append(batch.results[i]).append('\n');
+      if (errors == null) continue;
+      for (int stage = SCAN; stage <= INTERPRET; stage++) {
+        int from = batch.from(stage, i);
+        int to = batch.marks[stage * batch.size + i];
+        if (to == from) continue;
+        out.print(pending);
+        out.flush();
+        pending.setLength(0);
+        err.write(errors, from, to - from);
+      }
+    }
+    out.print(pending);
+    if (idle) out.flush();
+  }
+
+  /**
+   * 创建一个中间阶段：从input取一批，处理后放进output，遇到END时传下去并结束
+   */
+  private void stage(String name, BlockingQueue<Batch> input, BlockingQueue<Batch> output,
+                     Consumer<Batch> work) {
+    addStage(name, () -> {
+      for (;;) {
+        Batch batch = input.take();
+        if (batch != END) work.accept(batch);
+        if (output != null) output.put(batch);
+        if (batch == END) return;
+      }
+    });
+  }
+
+  private interface Task {
+    void run() throws Exception;
+  }
+
+  /**
+   * 创建一个阶段线程，出错时记录异常并中断其他阶段，阻塞在队列上的线程会因此退出
+   */
+  private void addStage(String name, Task task) {
+    Thread thread = new Thread(() -> {
+      try {
+        task.run();
+      } catch (InterruptedException e) {
+        // 其他阶段出错了
+      } catch (Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+          for (Thread other : threads) other.interrupt();
+        }
+      }
+    }, "lox-stream-" + name);
+    thread.setDaemon(true);
+    threads.add(thread);
+  }
+}
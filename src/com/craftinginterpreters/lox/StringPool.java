@@ -0,0 +1,66 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界的字符串池，合并字符串字面量和较短的拼接结果中相同的字符串，可以在多个线程中同时使用
+ * 按哈希值直接映射到固定大小的数组，每个槽只保留最近放入的一个字符串，冲突时新的替换旧的，
+ * 相当于每组只有一项的LRU；不加锁，字符串的字段都是final，通过数据竞争读到的也是完整的对象
+ * 被替换掉的字符串只要没有别的地方引用就会被回收，池本身最多只占capacity个引用
+ */
+class StringPool {
+  static final int DEFAULT_CAPACITY = 1 << 16; // 槽数，必须是2的幂
+  static final int DEFAULT_MAX_LENGTH = 64; // 超过这个长度的字符串不放进池
+
+  private final String[] slots;
+  private final int maxLength;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  StringPool() {
+    this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+  }
+
+  /**
+   * @param capacity 槽数，会向上取到2的幂
+   * @param maxLength 放进池的字符串的最大长度
+   */
+  StringPool(int capacity, int maxLength) {
+    int size = 1;
+    while (size < capacity && size < (1 << 30)) size <<= 1;
+    this.slots = new String[size];
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * 返回池中和s相等的字符串，没有时把s放进池
+   * @param s 字符串
+   * @return 和s相等的字符串，可能就是s
+   */
+  String intern(String s) {
+    if (s.length() > maxLength) return s;
+    int hash = s.hashCode();
+    int index = (hash ^ (hash >>> 16)) & (slots.length - 1);
+    String pooled = slots[index];
+    if (pooled != null && pooled.hashCode() == hash && pooled.equals(s)) {
+      hits.increment();
+      return pooled;
+    }
+    misses.increment();
+    slots[index] = s;
+    return s;
+  }
+
+  long hits() {
+    return hits.sum();
+  }
+
+  long misses() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "hits " + hits() + ", misses " + misses();
+  }
+}
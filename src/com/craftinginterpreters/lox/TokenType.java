@@ -7,6 +7,7 @@ enum TokenType {
   // 单字符token
   LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE,
   COMMA, DOT, MINUS, PLUS, SEMICOLON, SLASH, STAR,
+  QUESTION, COLON,
 
   /*
 LEFT_PAREN：左括号
@@ -20,6 +21,8 @@ PLUS：加号
 SEMICOLON：分号
 SLASH：斜杠
 STAR：星号
+QUESTION：问号
+COLON：冒号
    */
 
   // 一个或两个符号的token
@@ -0,0 +1,178 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 求值前的静态类型推断：推断每个节点的结果类型并写到Expr.type
+ * 运算节点的type不是UNKNOWN表示它的操作数类型已经确定是对的，Interpreter求值时不再检查；
+ * 操作数类型不确定，或者一定出错却不能提前报告时，type保持UNKNOWN，由Interpreter在运行时检查
+ * 用显式栈遍历，很深的树也不会StackOverflowError；遍历时检查Interpreter求值预算的截止时间和取消标记
+ */
+class TypeChecker {
+  private final Interpreter interpreter; // 用它的预算检查截止时间和取消
+
+  TypeChecker(Interpreter interpreter) {
+    this.interpreter = interpreter;
+  }
+
+  /**
+   * 推断类型，并找出求值时一定会抛出的第一个运行时异常
+   * 按求值顺序（从左到右的后序）检查，一定出错的节点之前如果有需要运行时检查、可能先出错的节点，
+   * 就不能确定哪个异常先抛出，这时不提前报告；and、or的右操作数和条件表达式的分支不一定求值，
+   * 其中的类型照常推断（是否求值不影响类型），但其中的错误不提前报告；求值时会不会超出预算不考虑
+   * @param root 语法树
+   * @return 求值时一定会抛出的第一个运行时异常，没有时返回null
+   * @throws BudgetExceededError 检查时超过了截止时间或者被取消
+   */
+  RuntimeError check(Expr root) {
+    List<Expr> order = new ArrayList<>(); // 根、右、左的顺序，倒过来就是求值顺序
+    BitSet guarded = new BitSet(); // order中不一定求值的节点
+    preOrder(root, order, guarded);
+
+    boolean mayFail = false; // 之前是否有需要运行时检查的节点
+    for (int i = order.size() - 1; i >= 0; i--) {
+      Expr expr = order.get(i);
+      RuntimeError error = infer(expr);
+      if (error != null && !mayFail && !guarded.get(i)) return error;
+      if (expr.type == LoxType.UNKNOWN && (expr.kind == Expr.UNARY || expr.kind == Expr.BINARY)) {
+        mayFail = true;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 先序遍历，右子节点在左子节点之前，倒过来就是子节点在父节点之前、左在右之前的求值顺序
+   * 不一定求值的节点记录在guarded中
+   */
+  private void preOrder(Expr root, List<Expr> order, BitSet guarded) {
+    ArrayDeque<Expr> stack = new ArrayDeque<>();
+    ArrayDeque<Boolean> guards = new ArrayDeque<>(); // 和stack一一对应
+    stack.push(root);
+    guards.push(false);
+    while (!stack.isEmpty()) {
+      Expr expr = stack.pop();
+      boolean guard = guards.pop();
+      interpreter.visited(expr);
+      if (guard) guarded.set(order.size());
+      order.add(expr);
+      // and、or和条件表达式只有第一个子节点（左操作数、条件）一定求值
+      boolean branches = expr.kind == Expr.LOGICAL || expr.kind == Expr.CONDITIONAL;
+      for (int i = 0; i < expr.childCount(); i++) {
+        stack.push(expr.child(i));
+        guards.push(guard || branches && i > 0);
+      }
+    }
+  }
+
+  /**
+   * 根据已经推断好的子节点类型推断expr的类型
+   * @return 一定会出现的类型错误，没有时返回null
+   */
+  private RuntimeError infer(Expr expr) {
+    switch (expr.kind) {
+      case Expr.LITERAL:
+        expr.type = typeOf(((Expr.Literal) expr).value);
+        return null;
+      case Expr.GROUPING:
+        expr.type = ((Expr.Grouping) expr).expression.type;
+        return null;
+      case Expr.UNARY:
+        return unary((Expr.Unary) expr);
+      case Expr.BINARY:
+        return binary((Expr.Binary) expr);
+      case Expr.LOGICAL: // 结果是某一个操作数
+        expr.type = union(((Expr.Logical) expr).left.type, ((Expr.Logical) expr).right.type);
+        return null;
+      case Expr.CONDITIONAL: // 结果是某一个分支
+        expr.type = union(((Expr.Conditional) expr).thenBranch.type,
+                ((Expr.Conditional) expr).elseBranch.type);
+        return null;
+    }
+    return null;
+  }
+
+  private RuntimeError unary(Expr.Unary expr) {
+    LoxType right = expr.right.type;
+    expr.type = LoxType.UNKNOWN; // 下面确定操作数类型正确时才改成结果类型
+    switch (expr.operator.type) {
+      case BANG:
+        expr.type = LoxType.BOOLEAN;
+        return null;
+      case MINUS:
+        if (right == LoxType.NUMBER) {
+          expr.type = LoxType.NUMBER;
+        } else if (right != LoxType.UNKNOWN) {
+          return new RuntimeError(expr.operator, "Operand must be a number.");
+        }
+        return null;
+    }
+    return null;
+  }
+
+  private RuntimeError binary(Expr.Binary expr) {
+    LoxType left = expr.left.type;
+    LoxType right = expr.right.type;
+    expr.type = LoxType.UNKNOWN; // 下面确定操作数类型正确时才改成结果类型
+    switch (expr.operator.type) {
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+      case MINUS:
+      case SLASH:
+      case STAR:
+        if (left == LoxType.NUMBER && right == LoxType.NUMBER) {
+          expr.type = expr.operator.type == TokenType.MINUS ||
+                  expr.operator.type == TokenType.SLASH ||
+                  expr.operator.type == TokenType.STAR ? LoxType.NUMBER : LoxType.BOOLEAN;
+        } else if (isNot(left, LoxType.NUMBER) || isNot(right, LoxType.NUMBER)) {
+          return new RuntimeError(expr.operator, "Operands must be numbers.");
+        }
+        return null;
+      case PLUS:
+        if (left == right && (left == LoxType.NUMBER || left == LoxType.STRING)) {
+          expr.type = left;
+        } else if (isNot(left, LoxType.NUMBER) && isNot(left, LoxType.STRING) ||
+                isNot(right, LoxType.NUMBER) && isNot(right, LoxType.STRING) ||
+                left != LoxType.UNKNOWN && right != LoxType.UNKNOWN) {
+          return new RuntimeError(expr.operator,
+                  "Operands must be two numbers or two strings.");
+        }
+        return null;
+      case BANG_EQUAL:
+      case EQUAL_EQUAL:
+        expr.type = LoxType.BOOLEAN;
+        return null;
+    }
+    return null;
+  }
+
+  /**
+   * 结果可能是a或b类型时的类型，两者相同时才确定
+   */
+  private static LoxType union(LoxType a, LoxType b) {
+    return a == b ? a : LoxType.UNKNOWN;
+  }
+
+  /**
+   * 类型已经确定并且不是expected
+   */
+  private static boolean isNot(LoxType type, LoxType expected) {
+    return type != LoxType.UNKNOWN && type != expected;
+  }
+
+  /**
+   * 值的类型
+   */
+  static LoxType typeOf(Object value) {
+    if (value == null) return LoxType.NIL;
+    if (value instanceof Long || value instanceof Double) return LoxType.NUMBER;
+    if (value instanceof String) return LoxType.STRING;
+    if (value instanceof Boolean) return LoxType.BOOLEAN;
+    return LoxType.UNKNOWN;
+  }
+}
@@ -2,6 +2,7 @@ package com.craftinginterpreters.tool;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -20,12 +21,17 @@ public class GenerateAst {
             "Binary   : Expr left, Token operator, Expr right",
             "Grouping : Expr expression",
             "Literal  : Object value",
-            "Unary    : Token operator, Expr right"
+            "Unary    : Token operator, Expr right",
+            "Logical  : Expr left, Token operator, Expr right",
+            "Conditional : Expr condition, Expr thenBranch, Expr elseBranch"
     ));
   }
 
   /**
    * 生成抽象语法树
+   * 基类声明为sealed，子类为final，并且每个子类有一个固定的类型编号kind，
+   * 解释器可以直接switch这个编号（编译成tableswitch）来分派，不必经过accept的两次虚调用
+   * 编号按types中的顺序从0开始，新增节点类型时要加在末尾，保证已有的编号不变
    * @param outputDir 输出目录
    * @param baseName 基类名称
    * @param types 每个子类名称及其参数列表
@@ -41,7 +47,14 @@ public class GenerateAst {
     writer.println();
     writer.println("import java.util.List;");
     writer.println();
-    writer.println("abstract class " + baseName + " {");
+    writer.println("sealed abstract class " + baseName + " permits");
+    for (int i = 0; i < types.size(); i++) {
+      String className = types.get(i).split(":")[0].trim();
+      writer.println("    " + baseName + "." + className +
+              (i < types.size() - 1 ? "," : " {"));
+    }
+    defineKinds(writer, baseName, types);
+    defineTypeField(writer);
     defineVisitor(writer, baseName, types);
     for (String type : types) { // 调用方法生成其所有子类
       String className = type.split(":")[0].trim(); // 子类名称
@@ -50,10 +63,42 @@ public class GenerateAst {
     }
     writer.println();
     writer.println("  abstract <R> R accept(Visitor<R> visitor);"); // 在基类中声明接受访问者的抽象方法，子类会实现这个方法
+    writer.println("  abstract int childCount();");
+    writer.println("  abstract " + baseName + " child(int index);"); // 按字段顺序（也就是求值顺序）取子节点，遍历时不用按类型列举字段
     writer.println("}");
     writer.close();
   }
 
+  /**
+   * 生成类型编号常量和基类中保存编号的字段
+   * @param writer 输出类
+   * @param baseName 基类名称
+   * @param types 子类名称：参数列表
+   */
+  private static void defineKinds(
+          PrintWriter writer, String baseName, List<String> types) {
+    for (int i = 0; i < types.size(); i++) {
+      String className = types.get(i).split(":")[0].trim();
+      writer.println("  static final int " + className.toUpperCase() + " = " + i + ";");
+    }
+    writer.println();
+    writer.println("  final int kind; // 节点类型编号");
+    writer.println();
+    writer.println("  private " + baseName + "(int kind) {");
+    writer.println("    this.kind = kind;");
+    writer.println("  }");
+    writer.println();
+  }
+
+  /**
+   * 生成可写的type字段，保存TypeChecker推断出的结果类型
+   * @param writer 输出类
+   */
+  private static void defineTypeField(PrintWriter writer) {
+    writer.println("  LoxType type = LoxType.UNKNOWN; // TypeChecker推断出的结果类型");
+    writer.println();
+  }
+
   /**
    * 在基类中生成访问者接口的方法
    * @param writer 输出类
@@ -83,11 +128,12 @@ public class GenerateAst {
   private static void defineType(
           PrintWriter writer, String baseName,
           String className, String fieldList) {
-    writer.println("  static class " + className + " extends " +
-            baseName + " {");
+    writer.println("  static final class " + className +
+            " extends " + baseName + " {");
 
     // 构造方法
     writer.println("    " + className + "(" + fieldList + ") {");
+    writer.println("      super(" + className.toUpperCase() + ");");
 
     // 在构造方法中为每个成员变量赋值
     String[] fields = fieldList.split(", ");
@@ -106,6 +152,8 @@ public class GenerateAst {
             className + baseName + "(this);");
     writer.println("    }");
 
+    defineChildren(writer, baseName, fields);
+
     // 成员变量
     writer.println();
     for (String field : fields) {
@@ -114,4 +162,36 @@ public class GenerateAst {
 
     writer.println("  }");
   }
+
+  /**
+   * 生成子类中遍历子节点的方法，类型为基类的字段就是子节点
+   * @param writer 输出类
+   * @param baseName 基类名称
+   * @param fields 子类的参数列表
+   */
+  private static void defineChildren(
+          PrintWriter writer, String baseName, String[] fields) {
+    List<String> children = new ArrayList<>();
+    for (String field : fields) {
+      if (field.split(" ")[0].equals(baseName)) children.add(field.split(" ")[1]);
+    }
+
+    writer.println();
+    writer.println("    @Override");
+    writer.println("    int childCount() {");
+    writer.println("      return " + children.size() + ";");
+    writer.println("    }");
+    writer.println();
+    writer.println("    @Override");
+    writer.println("    " + baseName + " child(int index) {");
+    if (!children.isEmpty()) {
+      writer.println("      switch (index) {");
+      for (int i = 0; i < children.size(); i++) {
+        writer.println("        case " + i + ": return " + children.get(i) + ";");
+      }
+      writer.println("      }");
+    }
+    writer.println("      throw new IndexOutOfBoundsException(index);");
+    writer.println("    }");
+  }
 }
\ No newline at end of file